@@ -6,7 +6,7 @@ import io.swagger.v3.oas.models.info.Info;
 import io.swagger.v3.oas.models.info.License;
 import io.swagger.v3.oas.models.servers.Server;
 import org.reactome.server.graph.curator.domain.model.DatabaseObject;
-import org.reflections.Reflections;
+import org.reactome.server.service.utils.DomainClassIndex;
 import org.springdoc.core.SpringDocUtils;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
@@ -14,6 +14,7 @@ import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Lazy;
 
 import javax.servlet.ServletContext;
+import java.io.IOException;
 
 /**
  * @author Guilherme S Viteri (gviteri@ebi.ac.uk)
@@ -24,11 +25,14 @@ public class SwaggerConfig {
 
     @Lazy
     @Bean
-    public OpenAPI createRestApi(ServletContext context) {
-        Reflections reflections = new Reflections(DatabaseObject.class.getPackage().getName());
+    public OpenAPI createRestApi(ServletContext context) throws IOException, ClassNotFoundException {
         SpringDocUtils config = SpringDocUtils.getConfig();
-        for (Class<?> clazz : reflections.getSubTypesOf(DatabaseObject.class)) {
-            config.replaceWithClass(clazz, Void.class);
+        // The domain model classes are listed at build time - see DomainClassIndex
+        for (String className : DomainClassIndex.getClassNames()) {
+            Class<?> clazz = Class.forName(className);
+            if (clazz != DatabaseObject.class && DatabaseObject.class.isAssignableFrom(clazz)) {
+                config.replaceWithClass(clazz, Void.class);
+            }
         }
 
         return new OpenAPI()
@@ -3,6 +3,7 @@ package org.reactome.server.service.config;
 
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.reactome.server.service.persistence.IndexBootstrapper;
 import org.reactome.server.service.persistence.Neo4JAdaptor;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
@@ -16,6 +17,7 @@ import org.springframework.web.multipart.commons.CommonsMultipartResolver;
 import org.springframework.web.servlet.config.annotation.ResourceHandlerRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
+import java.io.File;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
@@ -85,10 +87,37 @@ public class WebConfig implements WebMvcConfigurer {
                 .addResourceLocations("classpath:/META-INF/resources/webjars/");
     }
 
-    @Bean
+    @Bean(destroyMethod = "shutdown")
     public Neo4JAdaptor neo4JAdaptor(@Value("${neo4j.uri}") String neo4JUri,
                                  @Value("${neo4j.user}") String neo4JUser,
-                                 @Value("${neo4j.password}") String neo4JPassword) {
-        return new Neo4JAdaptor(neo4JUri, neo4JUser, neo4JPassword);
+                                 @Value("${neo4j.password}") String neo4JPassword,
+                                 @Value("${dbid.block.size:1000}") int dbIdBlockSize,
+                                 @Value("${attributes.preload.class.size:10000}") long preloadClassSize,
+                                 @Value("${attributes.preload.ratio:0.05}") double preloadRatio,
+                                 @Value("${attributes.preload.threads:16}") int attributeLoaderThreads,
+                                 @Value("${instance.cache.max.size:500000}") int instanceCacheMaxSize,
+                                 @Value("${instance.cache.max.weight:10000000}") long instanceCacheMaxWeight,
+                                 @Value("${instance.cache.soft.references:false}") boolean instanceCacheSoftReferences,
+                                 @Value("${dbid.bitmap:true}") boolean dbIdBitmap,
+                                 @Value("${schema.snapshot.dir:}") String schemaSnapshotDir) {
+        Neo4JAdaptor neo4JAdaptor = new Neo4JAdaptor(neo4JUri, neo4JUser, neo4JPassword,
+                schemaSnapshotDir.isEmpty() ? null : new File(schemaSnapshotDir));
+        neo4JAdaptor.setDbIdBlockSize(dbIdBlockSize);
+        neo4JAdaptor.getAttributeLoadPlanner().setPreloadClassSize(preloadClassSize);
+        neo4JAdaptor.getAttributeLoadPlanner().setPreloadRatio(preloadRatio);
+        neo4JAdaptor.setAttributeLoaderThreads(attributeLoaderThreads);
+        neo4JAdaptor.getInstanceCache().setMaxSize(instanceCacheMaxSize);
+        neo4JAdaptor.getInstanceCache().setMaxWeight(instanceCacheMaxWeight);
+        neo4JAdaptor.getInstanceCache().setUseSoftReferences(instanceCacheSoftReferences);
+        if (dbIdBitmap) {
+            neo4JAdaptor.buildDbIdBitmapInBackground();
+        }
+        return neo4JAdaptor;
+    }
+
+    @Bean(initMethod = "bootstrap")
+    public IndexBootstrapper indexBootstrapper(Neo4JAdaptor neo4JAdaptor,
+                                               @Value("${neo4j.indexes.create:false}") boolean createIndexes) {
+        return new IndexBootstrapper(neo4JAdaptor, createIndexes);
     }
 }
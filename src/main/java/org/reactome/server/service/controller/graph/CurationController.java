@@ -1,5 +1,6 @@
 package org.reactome.server.service.controller.graph;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
@@ -9,10 +10,15 @@ import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import org.neo4j.driver.*;
+import org.reactome.server.service.exception.BadRequestException;
+import org.reactome.server.service.model.ClassAttributeFollowingInstruction;
+import org.reactome.server.service.model.FlatInstanceGraph;
 import org.reactome.server.service.model.GKInstance;
 import org.reactome.server.service.model.Instance;
 import org.reactome.server.service.params.*;
 import org.reactome.server.service.persistence.AttributeQueryRequest;
+import org.reactome.server.service.persistence.DbIdBitmap;
+import org.reactome.server.service.persistence.IndexBootstrapper;
 import org.reactome.server.service.persistence.Neo4JAdaptor;
 import org.reactome.server.service.persistence.QueryRequest;
 import org.reactome.server.service.schema.*;
@@ -21,7 +27,11 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.*;
 
 /**
@@ -34,10 +44,17 @@ import java.util.*;
 public class CurationController {
 
     private static final Logger infoLogger = LoggerFactory.getLogger("infoLogger");
+    // The maximum number of DB_IDs that can be minted in a single request
+    private static final int MAX_MINT_COUNT = 100000;
+    private static final int MAX_PAGE_SIZE = 10000;
+    private static final String NDJSON = "application/x-ndjson";
 
     @Autowired
     private Neo4JAdaptor neo4JAdaptor;
 
+    @Autowired
+    private IndexBootstrapper indexBootstrapper;
+
     @Operation(summary = "The Schema")
     @ApiResponses({
             @ApiResponse(responseCode = "500", description = "Internal Server Error")
@@ -83,6 +100,49 @@ public class CurationController {
         neo4JAdaptor.refreshCaches();
     }
 
+    @Operation(summary = "Invalidate in the cache instances corresponding to the list of DB_IDs provided, whose cached attribute " +
+            "values are re-loaded from the database, and all instances of the classes (and their subclasses) in the list of " +
+            "class names provided, whose cached attribute values are dropped (to be loaded again when next needed) - the rest " +
+            "of the cache is left as it is")
+    @ApiResponses({
+            @ApiResponse(responseCode = "500", description = "Internal Server Error")
+    })
+    @RequestMapping(value = "/cache/invalidate", method = RequestMethod.POST, consumes = MediaType.TEXT_PLAIN_VALUE)
+    @ResponseBody
+    public void invalidateCache(
+            @io.swagger.v3.oas.annotations.parameters.RequestBody(
+                    description = "Json containing a collection of DB_IDs and a collection of class names (either can be empty)",
+                    required = true,
+                    content = @Content(examples = @ExampleObject("{ \"dbIds\" : [9612973], \"classNames\" : [\"Pathway\"]}"))
+            )
+            @RequestBody String post) throws Exception {
+        infoLogger.info("Request to invalidate in the cache instances by DB_ID and by class");
+        ObjectMapper objectMapper = new ObjectMapper();
+        InstancesClassData postData = objectMapper.convertValue(objectMapper.readTree(post), InstancesClassData.class);
+        if (postData.getDbIds() != null) {
+            neo4JAdaptor.invalidateInstances(postData.getDbIds());
+        }
+        if (postData.getClassNames() != null) {
+            for (String className : postData.getClassNames()) {
+                neo4JAdaptor.invalidateClass(className);
+            }
+        }
+    }
+
+    @Operation(summary = "Invalidate in the cache all instances modified (according to their _timestamp) at or after the time provided; " +
+            "return their DB_IDs")
+    @ApiResponses({
+            @ApiResponse(responseCode = "500", description = "Internal Server Error")
+    })
+    @RequestMapping(value = "/cache/invalidate/since", method = RequestMethod.POST, produces = MediaType.APPLICATION_JSON_VALUE)
+    @ResponseBody
+    public Set<Long> invalidateCacheModifiedSince(@Parameter(description = "Timestamp", example = "2023-01-31 12:00:00", required = true)
+                                                 @RequestParam String timestamp
+    ) throws Exception {
+        infoLogger.info("Request to invalidate in the cache instances modified since " + timestamp);
+        return neo4JAdaptor.invalidateModifiedSince(timestamp);
+    }
+
     @Operation(summary = "Set the use cache flag")
     @ApiResponses({
             @ApiResponse(responseCode = "500", description = "Internal Server Error")
@@ -107,6 +167,28 @@ public class CurationController {
         return neo4JAdaptor.isUseCache();
     }
 
+    @Operation(summary = "Metrics of the persistence layer (e.g. numbers of attribute loads per loading strategy)")
+    @ApiResponses({
+            @ApiResponse(responseCode = "500", description = "Internal Server Error")
+    })
+    @RequestMapping(value = "/metrics", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
+    @ResponseBody
+    public Map<String, Long> getMetrics() {
+        infoLogger.info("Request for the persistence layer metrics");
+        return neo4JAdaptor.getMetrics().snapshot();
+    }
+
+    @Operation(summary = "State of the DB_ID index (or uniqueness constraint) of each class in the schema")
+    @ApiResponses({
+            @ApiResponse(responseCode = "500", description = "Internal Server Error")
+    })
+    @RequestMapping(value = "/indexes", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
+    @ResponseBody
+    public List<IndexBootstrapper.DbIdIndex> getIndexes() {
+        infoLogger.info("Request for the state of DB_ID indexes");
+        return indexBootstrapper.check();
+    }
+
     @Operation(summary = "Clean up cache, close connection, unset schema")
     @ApiResponses({
             @ApiResponse(responseCode = "500", description = "Internal Server Error")
@@ -124,7 +206,9 @@ public class CurationController {
     })
     @RequestMapping(value = "/instances/fetch/existingdbids", method = RequestMethod.POST, consumes = MediaType.TEXT_PLAIN_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
     @ResponseBody
-    public Collection<Long> fetchExistingDB_IDs(
+    public Collection<?> fetchExistingDB_IDs(
+            @Parameter(description = "Format of the response: list of DB_IDs, or list of [first, last] ranges of consecutive DB_IDs", example = "ranges")
+            @RequestParam(required = false, defaultValue = "list") String format,
             @io.swagger.v3.oas.annotations.parameters.RequestBody(
                     description = "Json containing a collection of DB_IDs, a flag to search cache, " +
                             "and a flag to search for intersection or disjunctive union of existing DB_Ids with the list provided",
@@ -136,8 +220,12 @@ public class CurationController {
         infoLogger.info("Check if which existing DB_Ids are (or are not, depending on parameter) in the provided list");
         ObjectMapper objectMapper = new ObjectMapper();
         ExistingInstancesData postData = objectMapper.convertValue(objectMapper.readTree(post), ExistingInstancesData.class);
-        Set<Long> existingDB_IDs = neo4JAdaptor.existing(postData.getDbIds(), postData.getCheckCache(), postData.getInverse());
-        return existingDB_IDs;
+        DbIdBitmap existingDB_IDs = neo4JAdaptor.existingBitmap(postData.getDbIds(), postData.getCheckCache(), postData.getInverse());
+        if (format.equals("ranges"))
+            return existingDB_IDs.toRanges();
+        if (!format.equals("list"))
+            throw new BadRequestException("Unknown format: " + format + " (list or ranges expected)");
+        return existingDB_IDs.toSet();
     }
     
     @Operation(summary = "Fetch instance by DB_ID")
@@ -146,11 +234,21 @@ public class CurationController {
     })
     @RequestMapping(value = "/instances/fetch/{DB_ID}", method = RequestMethod.GET)
     @ResponseBody
-    public Instance fetchInstance(@Parameter(description = "DB_ID", example = "5263598", required = true)
-                            @PathVariable Long DB_ID
+    public Object fetchInstance(@Parameter(description = "DB_ID", example = "5263598", required = true)
+                            @PathVariable Long DB_ID,
+            @Parameter(description = "Write each instance once, in a flat table of instances, and refer to it elsewhere as {\"ref\": DB_ID}", example = "true")
+            @RequestParam(required = false, defaultValue = "false") Boolean flat,
+            @Parameter(description = "If flat: number of references followed from the instances returned (-1 for no limit)", example = "1")
+            @RequestParam(required = false, defaultValue = "1") Integer depth,
+            @Parameter(description = "If flat: names of the attributes to write (all if not provided)", example = "_displayName,hasEvent")
+            @RequestParam(required = false) List<String> attributes
     ) throws Exception {
         infoLogger.info("Fetch instance by DB_ID");
-        return neo4JAdaptor.fetchInstance(Long.parseLong(String.valueOf(DB_ID)));
+        Instance instance = neo4JAdaptor.fetchInstance(Long.parseLong(String.valueOf(DB_ID)));
+        if (instance != null && flat) {
+            return new FlatInstanceGraph(Collections.singletonList(instance), depth, attributes);
+        }
+        return instance;
     }
 
     @Operation(summary = "Fetch instances by a list of class names and, optionally, by a list of DB_IDs")
@@ -159,7 +257,13 @@ public class CurationController {
     })
     @RequestMapping(value = "/instances/fetch/byclassname", method = RequestMethod.POST, consumes = MediaType.TEXT_PLAIN_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
     @ResponseBody
-    public Collection<Instance> fetchInstances(
+    public Object fetchInstances(
+            @Parameter(description = "Write each instance once, in a flat table of instances, and refer to it elsewhere as {\"ref\": DB_ID}", example = "true")
+            @RequestParam(required = false, defaultValue = "false") Boolean flat,
+            @Parameter(description = "If flat: number of references followed from the instances returned (-1 for no limit)", example = "1")
+            @RequestParam(required = false, defaultValue = "1") Integer depth,
+            @Parameter(description = "If flat: names of the attributes to write (all if not provided)", example = "_displayName,hasEvent")
+            @RequestParam(required = false) List<String> attributes,
             @io.swagger.v3.oas.annotations.parameters.RequestBody(
                     description = "Json containing a collection of DB_IDs, and a collection of class names " +
                             "(DB_ID in position N of the first collection corresponds to the class name in position N of the second collection",
@@ -172,6 +276,10 @@ public class CurationController {
                 "If DB_IDs are provided, DB_ID in position N of the first collection corresponds to the class name in position N of the second collection");
         ObjectMapper objectMapper = new ObjectMapper();
         InstancesClassData postData = objectMapper.convertValue(objectMapper.readTree(post), InstancesClassData.class);
+        return serialize(fetchInstances(postData), flat, depth, attributes);
+    }
+
+    private Collection<Instance> fetchInstances(InstancesClassData postData) throws Exception {
         List<Long> dbIds = postData.getDbIds();
         Collection<Instance> instances = new ArrayList<>();
         List<String> classNames = postData.getClassNames();
@@ -201,10 +309,152 @@ public class CurationController {
         return instances;
     }
 
+    @Operation(summary = "Fetch instances by a list of class names and, optionally, by a list of DB_IDs - streamed as newline-delimited " +
+            "JSON (one instance per line) if requested with 'Accept: application/x-ndjson'. Instances of the classes are written as they " +
+            "are read from the database, and are not put into the instance cache.")
+    @ApiResponses({
+            @ApiResponse(responseCode = "500", description = "Internal Server Error")
+    })
+    @RequestMapping(value = "/instances/fetch/byclassname", method = RequestMethod.POST, consumes = MediaType.TEXT_PLAIN_VALUE, produces = NDJSON)
+    @ResponseBody
+    public StreamingResponseBody streamInstances(
+            @io.swagger.v3.oas.annotations.parameters.RequestBody(
+                    description = "Json containing a collection of DB_IDs, and a collection of class names " +
+                            "(DB_ID in position N of the first collection corresponds to the class name in position N of the second collection",
+                    required = true,
+                    content = @Content(examples = @ExampleObject("{ \"dbIds\" : [], \"classNames\" : [\"LiteratureReference\"]}"))
+
+            )
+            @RequestBody String post) throws Exception {
+        infoLogger.info("Stream instances for a collection of class names and, optionally, by a list of DB_IDs");
+        ObjectMapper objectMapper = new ObjectMapper();
+        InstancesClassData postData = objectMapper.convertValue(objectMapper.readTree(post), InstancesClassData.class);
+        ObjectMapper instanceMapper = new ObjectMapper();
+        instanceMapper.setSerializationInclusion(JsonInclude.Include.NON_EMPTY);
+        if (postData.getDbIds().size() > 0) {
+            // Instances are looked up one by one - there is no large result to stream
+            Collection<Instance> instances = fetchInstances(postData);
+            return out -> {
+                for (Instance instance : instances) {
+                    writeLine(out, instanceMapper, instance);
+                }
+            };
+        }
+        for (String className : postData.getClassNames()) {
+            ((GKSchema) neo4JAdaptor.getSchema()).isValidClassOrThrow(className);
+        }
+        return out -> {
+            try {
+                for (String className : postData.getClassNames()) {
+                    infoLogger.info("Stream instances for a className: " + className);
+                    neo4JAdaptor.streamInstancesByClass(className, instance -> writeLine(out, instanceMapper, instance));
+                    out.flush();
+                }
+            } catch (IOException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IOException(e);
+            }
+        };
+    }
+
+    @Operation(summary = "Traverse the graph from the instances with the DB_IDs provided, following from instances of the class of each instruction " +
+            "its attributes and reverse attributes (as InstanceUtilities.followInstanceAttributes() does), and stream the instances reached - " +
+            "including those started from - as newline-delimited JSON: one {DB_ID, schemaClass, displayName} per line. If class names are provided, " +
+            "only the instances of those classes (or, if returnListed is false, of none of them) are returned. The traversal runs in the database, " +
+            "in one query per depth.")
+    @ApiResponses({
+            @ApiResponse(responseCode = "400", description = "Invalid class or attribute name"),
+            @ApiResponse(responseCode = "500", description = "Internal Server Error")
+    })
+    @RequestMapping(value = "/instances/traverse", method = RequestMethod.POST, consumes = MediaType.TEXT_PLAIN_VALUE, produces = NDJSON)
+    @ResponseBody
+    public StreamingResponseBody traverseInstances(
+            @io.swagger.v3.oas.annotations.parameters.RequestBody(
+                    description = "Json containing a collection of DB_IDs to start from, a collection of instructions (class name, attributes " +
+                            "and reverse attributes to follow from instances of the class), and optionally a collection of class names to " +
+                            "return (or, if returnListed is false, to leave out) and a flag for applying instructions to instances of their " +
+                            "class only, not of its subclasses (strictly)",
+                    required = true,
+                    content = @Content(examples = @ExampleObject("{ \"dbIds\" : [9612973], \"instructions\" : [{\"className\" : \"Pathway\", " +
+                            "\"attributes\" : [\"hasEvent\"], \"reverseAttributes\" : []}], \"classNames\" : [\"ReactionlikeEvent\"], " +
+                            "\"returnListed\" : true, \"strictly\" : false}"))
+            )
+            @RequestBody String post) throws Exception {
+        infoLogger.info("Traverse the graph from a collection of DB_IDs");
+        ObjectMapper objectMapper = new ObjectMapper();
+        InstancesTraversalData postData = objectMapper.convertValue(objectMapper.readTree(post), InstancesTraversalData.class);
+        GKSchema schema = (GKSchema) neo4JAdaptor.getSchema();
+        // Validate the request before starting the response
+        List<ClassAttributeFollowingInstruction> instructions = new ArrayList<>();
+        try {
+            for (FollowingInstructionData instruction : postData.getInstructions()) {
+                schema.isValidClassOrThrow(instruction.getClassName());
+                GKSchemaClass cls = (GKSchemaClass) schema.getClassByName(instruction.getClassName());
+                for (String attributeName : instruction.getAttributes()) {
+                    cls.isValidAttributeOrThrow(attributeName);
+                }
+                for (String attributeName : instruction.getReverseAttributes()) {
+                    if (!cls.isValidReverseAttribute(attributeName)) {
+                        throw new BadRequestException("Invalid reverse attribute " + attributeName + " of class " + cls.getName());
+                    }
+                }
+                instructions.add(new ClassAttributeFollowingInstruction(instruction.getClassName(),
+                        instruction.getAttributes(), instruction.getReverseAttributes()));
+            }
+            for (String className : postData.getClassNames()) {
+                schema.isValidClassOrThrow(className);
+            }
+        } catch (InvalidClassException | InvalidAttributeException e) {
+            throw new BadRequestException(e.getMessage(), e);
+        }
+        ObjectMapper lineMapper = new ObjectMapper();
+        return out -> {
+            try {
+                neo4JAdaptor.traverse(postData.getDbIds(), instructions, postData.isStrictly(), instance -> {
+                    if (postData.getClassNames().isEmpty() || isa(instance, postData.getClassNames()) == postData.isReturnListed()) {
+                        Map<String, Object> line = new LinkedHashMap<>();
+                        line.put("DB_ID", instance.getDBID());
+                        line.put("schemaClass", instance.getSchemClass().getName());
+                        line.put("displayName", instance.getDisplayName());
+                        writeLine(out, lineMapper, line);
+                    }
+                });
+            } catch (IOException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IOException(e);
+            }
+        };
+    }
+
+    // Return true if instance is of (a subclass of) any of the classes classNames
+    private boolean isa(Instance instance, List<String> classNames) {
+        for (String className : classNames) {
+            if (instance.getSchemClass().isa(className)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Return instances as they are, or as a FlatInstanceGraph if flat is true
+    private Object serialize(Collection<Instance> instances, boolean flat, int depth, List<String> attributes) {
+        if (flat) {
+            return new FlatInstanceGraph(instances, depth, attributes);
+        }
+        return instances;
+    }
+
+    private void writeLine(OutputStream out, ObjectMapper mapper, Object value) throws IOException {
+        out.write(mapper.writeValueAsBytes(value));
+        out.write('\n');
+    }
+
     @Operation(summary = "Tries to get instances of class in the list of class names, with DB_ID in list provided " +
             "(DB_ID in position N of the first collection corresponds to the class name in position N of the second collection) " +
             " from instance cache, if possible.  Otherwise, creates a new instance with " +
-            " the given DB_ID.  This new instance will be cached even if caching is switched off.")
+            " the given DB_ID.  This new instance is cached only if caching is switched on.")
     @ApiResponses({
             @ApiResponse(responseCode = "500", description = "Internal Server Error")
     })
@@ -236,13 +486,29 @@ public class CurationController {
         return instances;
     }
 
-    @Operation(summary = "Fetch instances by a list of quadruples: className, attributeName, operator and value - returns max. 100 records")
+    @Operation(summary = "Fetch instances by a list of quadruples: className, attributeName, operator and value - returns one page " +
+            "(by default 100 records) in ascending order of DB_ID. If the page is full, the X-Next-Cursor header contains the value " +
+            "of 'after' for the next page; if 'total' is true, the X-Total-Count header contains the number of all matching instances.")
     @ApiResponses({
+            @ApiResponse(responseCode = "400", description = "Invalid page size"),
             @ApiResponse(responseCode = "500", description = "Internal Server Error")
     })
     @RequestMapping(value = "/instances/fetch/byattributevalues", method = RequestMethod.POST, consumes = MediaType.TEXT_PLAIN_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
     @ResponseBody
-    public Collection<Instance> fetchInstancesByAttributeValues(
+    public Object fetchInstancesByAttributeValues(
+            @Parameter(description = "Return only instances with a larger DB_ID (the X-Next-Cursor header of the previous page)", example = "5263598")
+            @RequestParam(required = false) Long after,
+            @Parameter(description = "Maximum number of instances to return", example = "100")
+            @RequestParam(required = false, defaultValue = "100") Integer limit,
+            @Parameter(description = "Return the number of all matching instances in the X-Total-Count header", example = "false")
+            @RequestParam(required = false, defaultValue = "false") Boolean total,
+            @Parameter(description = "Write each instance once, in a flat table of instances, and refer to it elsewhere as {\"ref\": DB_ID}", example = "true")
+            @RequestParam(required = false, defaultValue = "false") Boolean flat,
+            @Parameter(description = "If flat: number of references followed from the instances returned (-1 for no limit)", example = "1")
+            @RequestParam(required = false, defaultValue = "1") Integer depth,
+            @Parameter(description = "If flat: names of the attributes to write (all if not provided)", example = "_displayName,hasEvent")
+            @RequestParam(required = false) List<String> attributes,
+            HttpServletResponse response,
             @io.swagger.v3.oas.annotations.parameters.RequestBody(
                     description = "Json containing a collection of DB_IDs, a collection of class-attribute name tuples and a flag for recursive attribute value retrieval",
                     required = true,
@@ -275,12 +541,17 @@ public class CurationController {
             }
             aqrList.add(new AttributeQueryRequest(neo4JAdaptor.getSchema(), className, attributeName, operator, attributeValue));
         }
-        Set<Instance> instances = neo4JAdaptor.fetchInstance(aqrList);
-        // Sanity filter: Return maximum 100 instances
-        if (instances.size() > 100) {
-            return new ArrayList<>(instances).subList(0, 100);
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new BadRequestException("The number of instances to return must be between 1 and " + MAX_PAGE_SIZE);
         }
-        return instances;
+        List<Instance> instances = neo4JAdaptor.fetchInstance(aqrList, after, limit);
+        if (instances.size() == limit) {
+            response.setHeader("X-Next-Cursor", instances.get(instances.size() - 1).getDBID().toString());
+        }
+        if (total) {
+            response.setHeader("X-Total-Count", Long.toString(neo4JAdaptor.countInstances(aqrList)));
+        }
+        return serialize(instances, flat, depth, attributes);
     }
 
     @Operation(summary = "Load into memory instance attribute values for a collection of DB_IDs and a collection of class-attribute name tuples")
@@ -453,6 +724,22 @@ public class CurationController {
         return Long.toString(neo4JAdaptor.mintNewDBID());
     }
 
+    @Operation(summary = "Mint new DB_IDs")
+    @ApiResponses({
+            @ApiResponse(responseCode = "400", description = "Invalid number of DB_IDs requested"),
+            @ApiResponse(responseCode = "500", description = "Internal Server Error")
+    })
+    @RequestMapping(value = "/mint/dbids/{count}", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
+    @ResponseBody
+    public List<Long> mintNewDBIDs(@Parameter(description = "Number of DB_IDs to mint", example = "100", required = true)
+                                   @PathVariable Integer count) throws Exception {
+        infoLogger.info("Request to mint {} new DB_IDs", count);
+        if (count < 1 || count > MAX_MINT_COUNT) {
+            throw new BadRequestException("The number of DB_IDs to mint must be between 1 and " + MAX_MINT_COUNT);
+        }
+        return neo4JAdaptor.mintNewDBIDs(count);
+    }
+
     @Operation(summary = "Update in Neo4J an attribute value in instance(s) corresponding to the list of DB_IDs provided")
     @ApiResponses({
             @ApiResponse(responseCode = "500", description = "Internal Server Error")
@@ -480,7 +767,7 @@ public class CurationController {
                 for (String attributeName : attributeNames) {
                     neo4JAdaptor.updateInstanceAttribute((GKInstance) instance, attributeName, tx);
                 }
-                tx.commit();
+                neo4JAdaptor.commit(tx);
             }
         }
     }
@@ -550,6 +837,8 @@ public class CurationController {
                     }
                 }
             }
+            // Keep the instance in the cache until the new values are written to Neo4J (see updateindb end-point)
+            ((GKInstance) instance).setIsDirty(true);
         }
     }
 
@@ -586,7 +875,7 @@ public class CurationController {
                     neo4JAdaptor.storeInstance(instance, true, tx, true);
                     cnt++;
                 }
-                tx.commit();
+                neo4JAdaptor.commit(tx);
             }
         }
     }
@@ -627,7 +916,7 @@ public class CurationController {
                     neo4JAdaptor.updateInstance(instance, tx);
                     cnt++;
                 }
-                tx.commit();
+                neo4JAdaptor.commit(tx);
             }
         }
     }
@@ -666,7 +955,7 @@ public class CurationController {
                     neo4JAdaptor.deleteInstance(instance, tx);
                     cnt++;
                 }
-                tx.commit();
+                neo4JAdaptor.commit(tx);
             }
         }
     }
@@ -713,7 +1002,7 @@ public class CurationController {
             Transaction tx = session.beginTransaction();
             neo4JAdaptor.storeInstance(storeInstance, tx);
             neo4JAdaptor.updateInstanceAttribute(updateInstance, updateAttributeName, tx);
-            tx.commit();
+            neo4JAdaptor.commit(tx);
         }
     }
 }
@@ -1,63 +1,466 @@
 package org.reactome.server.service.model;
 
 import org.neo4j.driver.Value;
+import org.neo4j.driver.Values;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * This class implements a cache of all values assigned to attributes of classes. The intention behind this cache is
  * to speed-up loading (specifically from Neo4J) of Schema and Event view in CuratorTool.
+ * The values of each (class, attribute) pair are loaded at most once: the first caller of load() for that pair
+ * runs the loader, while any concurrent callers wait for its result. The values become visible to readers only
+ * once they have all been loaded, so a reader never sees a partially populated entry.
+ * The values of each (class, attribute) pair are kept in a columnar Block (see below) rather than in a map of boxed
+ * DB_IDs to lists of driver Values, so that whole-class preloads of large classes take a fraction of the heap.
  * @author datasome
  */
 public class AttributeValueCache {
-    // Class Name -> Attribute Name -> DB_ID -> List<Value>
-    private Map<String, Map<String, Map<Long, List<AttValCacheRecord>>>> cache = new ConcurrentHashMap<>();
+    // Class Name -> Attribute Name -> (future of) Block of values of all instances
+    private Map<String, Map<String, CompletableFuture<Block>>> cache = new ConcurrentHashMap<>();
 
     public void clear() {
         cache.clear();
     }
 
+    /**
+     * @return true if all values of attributeName of instances of className have been loaded into the cache
+     */
     public Boolean inCacheAlready(String className, String attributeName) {
-        return cache.containsKey(className) &&
-                cache.get(className).containsKey(attributeName);
+        return getLoaded(className, attributeName) != null;
     }
 
     public List<AttValCacheRecord> getValues(String className, String attributeName, Long dbId) {
-        if (cache.containsKey(className) &&
-                cache.get(className).containsKey(attributeName) &&
-                cache.get(className).get(attributeName).containsKey(dbId))
-            return cache.get(className).get(attributeName).get(dbId);
+        Block block = getLoaded(className, attributeName);
+        if (block != null)
+            return block.getValues(dbId);
         // DEBUG System.out.println(className + " : " + attributeName + " : " + dbId);
         return null;
     }
 
-    public void addInstanceValue(String className, String attributeName, Long dbId, Value value, String valueSchemaClass) {
-        addClassAttribute(className, attributeName);
-        Map<Long, List<AttValCacheRecord>> dbId2Vals = cache.get(className).get(attributeName);
-        if (!dbId2Vals.containsKey(dbId)) {
-            dbId2Vals.put(dbId, new CopyOnWriteArrayList());
+    /**
+     * Load all values of attributeName of instances of className into the cache, unless they have been loaded already.
+     * If another thread is loading the same values at the same time, wait for it to finish instead of loading them again.
+     *
+     * @param className     class of the instances
+     * @param attributeName attribute of className
+     * @param loader        adds all the values of attributeName (of all instances of className) to the Builder it is given
+     * @throws Exception if the values could not be loaded (by this or by the concurrent thread) - in which case
+     *                   nothing is cached for className and attributeName, and the next call to load() will re-try
+     */
+    public void load(String className, String attributeName, Loader loader) throws Exception {
+        Map<String, CompletableFuture<Block>> att2Vals = cache.computeIfAbsent(className, k -> new ConcurrentHashMap<>());
+        CompletableFuture<Block> ours = new CompletableFuture<>();
+        CompletableFuture<Block> future = att2Vals.computeIfAbsent(attributeName, k -> ours);
+        if (future != ours) {
+            // Being loaded (or loaded already) by another thread
+            try {
+                future.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+            } catch (CancellationException e) {
+                throw new Exception("Loading of " + className + "." + attributeName + " was cancelled", e);
+            }
+            return;
         }
-        dbId2Vals.get(dbId).add(new AttValCacheRecord(value, valueSchemaClass));
+        try {
+            Builder builder = new Builder();
+            loader.load(builder);
+            ours.complete(builder.build());
+        } catch (Exception | Error e) {
+            // Let the next caller re-try
+            att2Vals.remove(attributeName, ours);
+            ours.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    /**
+     * @return names of the classes for which values of (some) attributes are in the cache
+     */
+    public Set<String> getClassNames() {
+        return new HashSet<>(cache.keySet());
+    }
+
+    /**
+     * @return names of the attributes of className whose values are in the cache (or being loaded)
+     */
+    public Set<String> getAttributeNames(String className) {
+        Map<String, CompletableFuture<Block>> att2Vals = cache.get(className);
+        return att2Vals == null ? Collections.emptySet() : new HashSet<>(att2Vals.keySet());
+    }
+
+    /**
+     * Remove from the cache the values of all attributes of className
+     */
+    public void invalidate(String className) {
+        cache.remove(className);
     }
 
-    public void addPrimitiveValue(String className, String attributeName, Long dbId, Value value) {
-        addClassAttribute(className, attributeName);
-        Map<Long, List<AttValCacheRecord>> dbId2Vals = cache.get(className).get(attributeName);
-        if (!dbId2Vals.containsKey(dbId)) {
-            dbId2Vals.put(dbId, new CopyOnWriteArrayList());
+    /**
+     * Remove from the cache the values of attributeName of className
+     */
+    public void invalidate(String className, String attributeName) {
+        Map<String, CompletableFuture<Block>> att2Vals = cache.get(className);
+        if (att2Vals != null) {
+            att2Vals.remove(attributeName);
+        }
+    }
+
+    /**
+     * Replace in the cache the values of attributeName of instances dbIds (of className) with those added by loader;
+     * the values of all other instances are kept. Nothing is done if the values of attributeName of className are
+     * not in the cache; if they are being loaded, they are removed from the cache instead (to be re-loaded when
+     * next needed).
+     *
+     * @param className     class of the instances
+     * @param attributeName attribute of className
+     * @param dbIds         DB_IDs of the instances whose values are to be replaced
+     * @param loader        adds the current values of attributeName of instances dbIds to the Builder it is given
+     * @throws Exception if the values could not be loaded - in which case the values of attributeName of className are
+     *                   removed from the cache
+     */
+    public void refresh(String className, String attributeName, Collection<Long> dbIds, Loader loader) throws Exception {
+        Map<String, CompletableFuture<Block>> att2Vals = cache.get(className);
+        CompletableFuture<Block> current = att2Vals == null ? null : att2Vals.get(attributeName);
+        if (current == null) {
+            return;
+        }
+        Block block = current.isDone() && !current.isCompletedExceptionally() ? current.join() : null;
+        if (block == null) {
+            att2Vals.remove(attributeName, current);
+            return;
+        }
+        long[] refreshed = dbIds.stream().mapToLong(Long::longValue).sorted().toArray();
+        Builder builder = new Builder();
+        try {
+            block.copyTo(builder, refreshed);
+            loader.load(builder);
+        } catch (Exception | Error e) {
+            att2Vals.remove(attributeName, current);
+            throw e;
+        }
+        if (!att2Vals.replace(attributeName, current, CompletableFuture.completedFuture(builder.build()))) {
+            // Changed by another thread in the meantime - the values cannot be trusted either way
+            att2Vals.remove(attributeName);
+        }
+    }
+
+    // Return the values of attributeName of instances of className if they have all been loaded; null otherwise
+    private Block getLoaded(String className, String attributeName) {
+        Map<String, CompletableFuture<Block>> att2Vals = cache.get(className);
+        if (att2Vals == null) {
+            return null;
+        }
+        CompletableFuture<Block> future = att2Vals.get(attributeName);
+        if (future == null || !future.isDone() || future.isCompletedExceptionally()) {
+            return null;
+        }
+        return future.join();
+    }
+
+    /**
+     * Loads all the values of an attribute of a class into a Builder
+     */
+    @FunctionalInterface
+    public interface Loader {
+        void load(Builder builder) throws Exception;
+    }
+
+    /**
+     * Collects the values of a (class, attribute) pair while they are being loaded. A Builder is used by a single
+     * thread only; its contents are published to the cache (and to any waiting threads) in one go, once loaded.
+     * Values are appended to typed columns; if values of different types turn up for the same attribute, all of them
+     * are kept as driver Values instead (along with the schema classes of instance values).
+     */
+    public static class Builder {
+        private int size = 0;
+        private long[] owners = new long[16];
+        private Kind kind = null;
+        private long[] longs;
+        private double[] doubles;
+        private String[] strings;
+        private Value[] values;
+        private int[] schemaClassIds;
+        private final Map<String, String> internedStrings = new HashMap<>();
+        private final Map<String, Integer> schemaClassIndex = new HashMap<>();
+        private final List<String> schemaClasses = new ArrayList<>();
+
+        public void addInstanceValue(Long dbId, Value value, String valueSchemaClass) {
+            int row = addRow(dbId, Kind.INSTANCE);
+            if (kind == Kind.INSTANCE) {
+                longs[row] = value.asLong();
+            } else {
+                values[row] = value;
+            }
+            schemaClassIds[row] = schemaClassIndex.computeIfAbsent(valueSchemaClass, k -> {
+                schemaClasses.add(k);
+                return schemaClasses.size() - 1;
+            });
+        }
+
+        public void addPrimitiveValue(Long dbId, Value value) {
+            Object object = value.asObject();
+            Kind valueKind = object instanceof Long ? Kind.LONG :
+                    object instanceof Double ? Kind.DOUBLE :
+                    object instanceof Boolean ? Kind.BOOLEAN :
+                    object instanceof String ? Kind.STRING : Kind.VALUE;
+            int row = addRow(dbId, valueKind);
+            switch (kind) {
+                case LONG:
+                    longs[row] = (Long) object;
+                    break;
+                case BOOLEAN:
+                    longs[row] = (Boolean) object ? 1 : 0;
+                    break;
+                case DOUBLE:
+                    doubles[row] = (Double) object;
+                    break;
+                case STRING:
+                    strings[row] = internedStrings.computeIfAbsent((String) object, k -> k);
+                    break;
+                default:
+                    values[row] = value;
+                    schemaClassIds[row] = NO_SCHEMA_CLASS;
+            }
+        }
+
+        // Append a row for owner dbId, holding a value of kind valueKind; return the index of the row
+        private int addRow(Long dbId, Kind valueKind) {
+            if (kind == null) {
+                kind = valueKind;
+            } else if (kind != valueKind && kind != Kind.VALUE) {
+                toValues();
+            }
+            if (size == owners.length) {
+                owners = Arrays.copyOf(owners, size * 2);
+            }
+            owners[size] = dbId;
+            ensureColumnCapacity(owners.length);
+            return size++;
+        }
+
+        private void ensureColumnCapacity(int capacity) {
+            switch (kind) {
+                case INSTANCE:
+                    if (schemaClassIds == null || schemaClassIds.length < capacity)
+                        schemaClassIds = schemaClassIds == null ? new int[capacity] : Arrays.copyOf(schemaClassIds, capacity);
+                    // fall through - DB_IDs of instances are kept in longs
+                case LONG:
+                case BOOLEAN:
+                    if (longs == null || longs.length < capacity)
+                        longs = longs == null ? new long[capacity] : Arrays.copyOf(longs, capacity);
+                    break;
+                case DOUBLE:
+                    if (doubles == null || doubles.length < capacity)
+                        doubles = doubles == null ? new double[capacity] : Arrays.copyOf(doubles, capacity);
+                    break;
+                case STRING:
+                    if (strings == null || strings.length < capacity)
+                        strings = strings == null ? new String[capacity] : Arrays.copyOf(strings, capacity);
+                    break;
+                default:
+                    if (values == null || values.length < capacity)
+                        values = values == null ? new Value[capacity] : Arrays.copyOf(values, capacity);
+                    if (schemaClassIds == null || schemaClassIds.length < capacity)
+                        schemaClassIds = schemaClassIds == null ? new int[capacity] : Arrays.copyOf(schemaClassIds, capacity);
+            }
+        }
+
+        // Convert the values added so far to driver Values - when values of an attribute turn out to be of mixed types
+        private void toValues() {
+            Block soFar = new Block(kind, owners, null, size, longs, doubles, strings, null, schemaClassIds,
+                    schemaClasses.toArray(new String[0]));
+            values = new Value[owners.length];
+            int[] valueSchemaClassIds = new int[owners.length];
+            for (int row = 0; row < size; row++) {
+                values[row] = soFar.getRecord(row).getValue();
+                valueSchemaClassIds[row] = kind == Kind.INSTANCE ? schemaClassIds[row] : NO_SCHEMA_CLASS;
+            }
+            kind = Kind.VALUE;
+            longs = null;
+            doubles = null;
+            strings = null;
+            schemaClassIds = valueSchemaClassIds;
+        }
+
+        private Block build() {
+            if (kind == null) {
+                kind = Kind.VALUE;
+            }
+            // Distinct owners, sorted
+            long[] sorted = Arrays.copyOf(owners, size);
+            Arrays.sort(sorted);
+            int distinct = 0;
+            for (int i = 0; i < sorted.length; i++) {
+                if (distinct == 0 || sorted[distinct - 1] != sorted[i]) {
+                    sorted[distinct++] = sorted[i];
+                }
+            }
+            long[] blockOwners = Arrays.copyOf(sorted, distinct);
+            // offsets[i] .. offsets[i + 1] - 1 are the rows of blockOwners[i]
+            int[] offsets = new int[distinct + 1];
+            int[] ownerIndex = new int[size];
+            for (int row = 0; row < size; row++) {
+                ownerIndex[row] = Arrays.binarySearch(blockOwners, owners[row]);
+                offsets[ownerIndex[row] + 1]++;
+            }
+            for (int i = 0; i < distinct; i++) {
+                offsets[i + 1] += offsets[i];
+            }
+            // Move each row to its place, keeping rows of the same owner in the order in which they were added
+            int[] next = Arrays.copyOf(offsets, distinct);
+            int[] target = new int[size];
+            for (int row = 0; row < size; row++) {
+                target[row] = next[ownerIndex[row]]++;
+            }
+            return new Block(kind, blockOwners, offsets, size,
+                    longs == null ? null : permute(longs, target, size),
+                    doubles == null ? null : permute(doubles, target, size),
+                    strings == null ? null : permute(strings, target, size),
+                    values == null ? null : permute(values, target, size),
+                    schemaClassIds == null ? null : permute(schemaClassIds, target, size),
+                    schemaClasses.toArray(new String[0]));
+        }
+
+        private static long[] permute(long[] column, int[] target, int size) {
+            long[] ret = new long[size];
+            for (int row = 0; row < size; row++) ret[target[row]] = column[row];
+            return ret;
+        }
+
+        private static double[] permute(double[] column, int[] target, int size) {
+            double[] ret = new double[size];
+            for (int row = 0; row < size; row++) ret[target[row]] = column[row];
+            return ret;
+        }
+
+        private static int[] permute(int[] column, int[] target, int size) {
+            int[] ret = new int[size];
+            for (int row = 0; row < size; row++) ret[target[row]] = column[row];
+            return ret;
+        }
+
+        private static <T> T[] permute(T[] column, int[] target, int size) {
+            T[] ret = Arrays.copyOf(column, size);
+            for (int row = 0; row < size; row++) ret[target[row]] = column[row];
+            return ret;
         }
-        dbId2Vals.get(dbId).add(new AttValCacheRecord(value));
     }
 
-    public void addClassAttribute(String className, String attributeName) {
-        if (!cache.containsKey(className)) {
-            cache.put(className, new ConcurrentHashMap());
+    // Type of the values held in a Block, which determines the column(s) in which they are kept
+    private enum Kind {
+        // longs
+        LONG,
+        // longs (1 for true, 0 for false)
+        BOOLEAN,
+        // doubles
+        DOUBLE,
+        // strings
+        STRING,
+        // longs (DB_IDs) and schemaClassIds (indexes into schemaClasses)
+        INSTANCE,
+        // values - anything else, e.g. lists, or values of mixed types - and schemaClassIds (NO_SCHEMA_CLASS for
+        // values other than instances)
+        VALUE
+    }
+
+    // Index in schemaClassIds of a value which is not an instance
+    private static final int NO_SCHEMA_CLASS = -1;
+
+    /**
+     * Immutable columnar store of all values of a (class, attribute) pair: the values of owners[i] are in rows
+     * offsets[i] .. offsets[i + 1] - 1 of the column(s) corresponding to kind. owners is sorted, so the values of
+     * an instance are found by binary search. AttValCacheRecords are only created when the values are asked for.
+     */
+    private static class Block {
+        private final Kind kind;
+        private final long[] owners;
+        private final int[] offsets;
+        private final int size;
+        private final long[] longs;
+        private final double[] doubles;
+        private final String[] strings;
+        private final Value[] values;
+        private final int[] schemaClassIds;
+        private final String[] schemaClasses;
+
+        Block(Kind kind, long[] owners, int[] offsets, int size, long[] longs, double[] doubles, String[] strings,
+              Value[] values, int[] schemaClassIds, String[] schemaClasses) {
+            this.kind = kind;
+            this.owners = owners;
+            this.offsets = offsets;
+            this.size = size;
+            this.longs = longs;
+            this.doubles = doubles;
+            this.strings = strings;
+            this.values = values;
+            this.schemaClassIds = schemaClassIds;
+            this.schemaClasses = schemaClasses;
+        }
+
+        List<AttValCacheRecord> getValues(long dbId) {
+            int i = Arrays.binarySearch(owners, dbId);
+            if (i < 0) {
+                return null;
+            }
+            if (offsets[i + 1] - offsets[i] == 1) {
+                return Collections.singletonList(getRecord(offsets[i]));
+            }
+            List<AttValCacheRecord> ret = new ArrayList<>(offsets[i + 1] - offsets[i]);
+            for (int row = offsets[i]; row < offsets[i + 1]; row++) {
+                ret.add(getRecord(row));
+            }
+            return ret;
         }
-        if (!cache.get(className).containsKey(attributeName)) {
-            cache.get(className).put(attributeName, new ConcurrentHashMap());
+
+        // Add to builder the values of all owners except those in excluded (sorted)
+        void copyTo(Builder builder, long[] excluded) {
+            for (int i = 0; i < owners.length; i++) {
+                if (Arrays.binarySearch(excluded, owners[i]) >= 0) {
+                    continue;
+                }
+                for (int row = offsets[i]; row < offsets[i + 1]; row++) {
+                    AttValCacheRecord record = getRecord(row);
+                    if (record.getSchemaClass() != null) {
+                        builder.addInstanceValue(owners[i], record.getValue(), record.getSchemaClass());
+                    } else {
+                        builder.addPrimitiveValue(owners[i], record.getValue());
+                    }
+                }
+            }
+        }
+
+        AttValCacheRecord getRecord(int row) {
+            switch (kind) {
+                case LONG:
+                    return new AttValCacheRecord(Values.value(longs[row]));
+                case BOOLEAN:
+                    return new AttValCacheRecord(Values.value(longs[row] == 1));
+                case DOUBLE:
+                    return new AttValCacheRecord(Values.value(doubles[row]));
+                case STRING:
+                    return new AttValCacheRecord(Values.value(strings[row]));
+                case INSTANCE:
+                    return new AttValCacheRecord(Values.value(longs[row]), schemaClasses[schemaClassIds[row]]);
+                default:
+                    if (schemaClassIds[row] != NO_SCHEMA_CLASS) {
+                        return new AttValCacheRecord(values[row], schemaClasses[schemaClassIds[row]]);
+                    }
+                    return new AttValCacheRecord(values[row]);
+            }
         }
     }
 
@@ -0,0 +1,103 @@
+package org.reactome.server.service.model;
+
+import java.util.*;
+
+/**
+ * Instances, and the instances they refer to, serialized as a flat table: each instance is written once, under its
+ * DB_ID in instances, and is referred to everywhere else (in roots and in attribute values) as {"ref": DB_ID} -
+ * rather than inlining the GKInstance (and recursively the instances it refers to) at every place it is used.
+ * Only attribute values already loaded into the instances are written; nothing is fetched from the database.
+ */
+public class FlatInstanceGraph {
+    private final List<Map<String, Object>> roots = new ArrayList<>();
+    private final Map<Long, Map<String, Object>> instances = new LinkedHashMap<>();
+
+    /**
+     * @param rootInstances instances to serialize
+     * @param depth         number of references followed from rootInstances: instances up to depth references away
+     *                      are written with their attribute values, and those one reference further with DB_ID, class
+     *                      and display name only (so that all references can be resolved); negative for no limit
+     * @param attributeNames names of the attributes to write and follow (null for all)
+     */
+    public FlatInstanceGraph(Collection<? extends Instance> rootInstances, int depth, Collection<String> attributeNames) {
+        Set<String> projection = attributeNames == null ? null : new HashSet<>(attributeNames);
+        // Instances to write in full at the current depth
+        List<Instance> current = new ArrayList<>();
+        for (Instance instance : rootInstances) {
+            roots.add(reference(instance, current));
+        }
+        for (int d = 0; !current.isEmpty(); d++) {
+            List<Instance> next = new ArrayList<>();
+            for (Instance instance : current) {
+                Map<String, Object> entry = instances.get(instance.getDBID());
+                if (depth < 0 || d <= depth) {
+                    entry.put("attributes", attributes(instance, projection, next));
+                }
+            }
+            current = next;
+        }
+    }
+
+    public List<Map<String, Object>> getRoots() {
+        return roots;
+    }
+
+    public Map<Long, Map<String, Object>> getInstances() {
+        return instances;
+    }
+
+    // Return the reference to instance, adding its entry to instances (and instance to pending) the first time
+    private Map<String, Object> reference(Instance instance, List<Instance> pending) {
+        Long dbId = instance.getDBID();
+        if (dbId == null) {
+            // Not stored yet, hence cannot be referred to by DB_ID
+            return entry(instance);
+        }
+        if (!instances.containsKey(dbId)) {
+            instances.put(dbId, entry(instance));
+            pending.add(instance);
+        }
+        return Collections.singletonMap("ref", dbId);
+    }
+
+    private Map<String, Object> entry(Instance instance) {
+        Map<String, Object> entry = new LinkedHashMap<>();
+        entry.put("DB_ID", instance.getDBID());
+        if (instance.getSchemClass() != null) {
+            entry.put("schemaClass", instance.getSchemClass().getName());
+        }
+        // Not getDisplayName(), which would load the display name of a shell from the database
+        Object displayName = ((GKInstance) instance).getAttributes().get(ReactomeJavaConstants._displayName);
+        if (displayName instanceof List) {
+            displayName = ((List) displayName).isEmpty() ? null : ((List) displayName).get(0);
+        }
+        entry.put("displayName", displayName);
+        return entry;
+    }
+
+    private Map<String, Object> attributes(Instance instance, Set<String> projection, List<Instance> pending) {
+        Map<String, Object> attributes = new LinkedHashMap<>();
+        for (Object o : ((GKInstance) instance).getAttributes().entrySet()) {
+            Map.Entry attribute = (Map.Entry) o;
+            String name = (String) attribute.getKey();
+            if (projection == null || projection.contains(name)) {
+                attributes.put(name, value(attribute.getValue(), pending));
+            }
+        }
+        return attributes;
+    }
+
+    private Object value(Object value, List<Instance> pending) {
+        if (value instanceof Instance) {
+            return reference((Instance) value, pending);
+        }
+        if (value instanceof Collection) {
+            List<Object> values = new ArrayList<>(((Collection) value).size());
+            for (Object v : (Collection) value) {
+                values.add(value(v, pending));
+            }
+            return values;
+        }
+        return value;
+    }
+}
@@ -0,0 +1,95 @@
+package org.reactome.server.service.model;
+
+import org.reactome.server.service.schema.SchemaClass;
+
+import java.util.*;
+
+/**
+ * Loads the values of the attributes followed by a breadth-first traversal of instances (e.g. hasEvent and hasMember
+ * from a Pathway) for a whole frontier - the instances at the same depth - at once, before the traversal reads them:
+ * one query per batch of instances (see PersistenceAdaptor.loadTraversalAttributeValues()), rather than one lazy load
+ * per instance. Frontiers are loaded in batches of at most batchSize instances, which bounds the size of each query
+ * and of its results.
+ */
+public class FrontierTraversal {
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+
+    private final int batchSize;
+
+    public FrontierTraversal() {
+        this(DEFAULT_BATCH_SIZE);
+    }
+
+    public FrontierTraversal(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+        }
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Load the values of attributes attNames (where valid) of the instances in frontier
+     *
+     * @param frontier GKInstances
+     * @param attNames names of the attributes to load
+     * @throws Exception
+     */
+    public void prefetch(Collection<GKInstance> frontier, String... attNames) throws Exception {
+        List<String> attNameList = Arrays.asList(attNames);
+        Map<GKInstance, Collection<String>> instance2AttNames = new LinkedHashMap<>();
+        for (GKInstance instance : frontier) {
+            instance2AttNames.put(instance, attNameList);
+        }
+        load(instance2AttNames);
+    }
+
+    /**
+     * Load the values of the attributes of the instances in frontier which instructions follow
+     *
+     * @param frontier     GKInstances
+     * @param instructions ClassAttributeFollowingInstructions
+     * @param strictly     if true, an instruction applies to instances of its class only, not to those of subclasses -
+     *                     see InstanceUtilities.followInstanceAttributesStrictly()
+     * @throws Exception
+     */
+    public void prefetch(Collection frontier, Collection instructions, boolean strictly) throws Exception {
+        Map<GKInstance, Collection<String>> instance2AttNames = new LinkedHashMap<>();
+        for (Iterator fi = frontier.iterator(); fi.hasNext(); ) {
+            GKInstance instance = (GKInstance) fi.next();
+            SchemaClass cls = instance.getSchemClass();
+            if (cls == null || instance2AttNames.containsKey(instance)) continue;
+            Set<String> attNames = new HashSet<>();
+            for (Iterator ii = instructions.iterator(); ii.hasNext(); ) {
+                ClassAttributeFollowingInstruction cafi = (ClassAttributeFollowingInstruction) ii.next();
+                if (strictly ? cls.getName().equals(cafi.getClassName()) : cls.isa(cafi.getClassName())) {
+                    attNames.addAll(cafi.getAttributes());
+                }
+            }
+            if (!attNames.isEmpty()) {
+                instance2AttNames.put(instance, attNames);
+            }
+        }
+        load(instance2AttNames);
+    }
+
+    // Load the values in batches of at most batchSize instances, per adaptor (instances without one are left to load
+    // their values lazily, if at all)
+    private void load(Map<GKInstance, Collection<String>> instance2AttNames) throws Exception {
+        Map<PersistenceAdaptor, Map<GKInstance, Collection<String>>> adaptor2Batch = new HashMap<>();
+        for (Map.Entry<GKInstance, Collection<String>> entry : instance2AttNames.entrySet()) {
+            PersistenceAdaptor adaptor = entry.getKey().getDbAdaptor();
+            if (adaptor == null) continue;
+            Map<GKInstance, Collection<String>> batch = adaptor2Batch.computeIfAbsent(adaptor, k -> new LinkedHashMap<>());
+            batch.put(entry.getKey(), entry.getValue());
+            if (batch.size() == batchSize) {
+                adaptor.loadTraversalAttributeValues(batch);
+                batch.clear();
+            }
+        }
+        for (Map.Entry<PersistenceAdaptor, Map<GKInstance, Collection<String>>> entry : adaptor2Batch.entrySet()) {
+            if (!entry.getValue().isEmpty()) {
+                entry.getKey().loadTraversalAttributeValues(entry.getValue());
+            }
+        }
+    }
+}
@@ -3,28 +3,80 @@
  */
 package org.reactome.server.service.model;
 
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
 
 /**
- * 
+ * A cache of Instances keyed by DB_ID, bounded both in the number of instances and in their total weight
+ * (one per instance plus one per loaded attribute - a rough measure of the memory held by an instance).
+ * When either bound is exceeded, instances not used recently are evicted (CLOCK policy) - except for pinned ones:
+ * instances that are dirty (edited in the cache but not yet written to the database) and instances
+ * pinned explicitly (e.g. while the transaction writing them is open) are never evicted. When a sweep finds nothing
+ * to evict, eviction is not tried again until the cache has grown by another eighth, so that a cache full of pinned
+ * instances is not swept on every put.
+ * Optionally, evicted instances are kept in a second tier of soft references, from which they are
+ * reclaimed by the garbage collector only when the heap runs low.
+ * Instances are kept in open-addressing hash tables keyed by primitive long DB_IDs, split into stripes
+ * with a lock each, so that concurrent requests rarely wait for each other and looking up an instance
+ * allocates nothing.
  * @author wgm
  */
 public class InstanceCache {
-//	private Map cache = new HashMap();
+	public static final int DEFAULT_MAX_SIZE = 500000;
+	public static final long DEFAULT_MAX_WEIGHT = 10000000;
+	// Number of stripes - a power of 2
+	private static final int STRIPES = 64;
+
 	// There may be a multiple threading problem in a servlet environment.
 	// e.g. two threads may put some instances together into the cache, which
-	// basically block get and put!
-	// Use this version of map may help to avoid such a problem.
-	private Map<Long, Instance> cache = new ConcurrentHashMap<Long, Instance>();
-	
+	// basically block get and put! Each stripe has its own lock to avoid such a problem.
+	private final Stripe[] stripes = new Stripe[STRIPES];
+	private final AtomicInteger size = new AtomicInteger();
+	private final AtomicLong weight = new AtomicLong();
+	private volatile int maxSize = DEFAULT_MAX_SIZE;
+	private volatile long maxWeight = DEFAULT_MAX_WEIGHT;
+	// One thread evicts at a time, sweeping the stripes in turn from clockStripe
+	private final Object evictionLock = new Object();
+	private int clockStripe = 0;
+	// Size and weight at which to try evicting again after a sweep of all stripes found nothing to evict (0 otherwise)
+	private volatile int retrySize = 0;
+	private volatile long retryWeight = 0;
+	// DB_ID -> condition under which the instance must not be evicted
+	private final Map<Long, BooleanSupplier> pins = new ConcurrentHashMap<Long, BooleanSupplier>();
+	// Second tier: evicted instances, until the garbage collector needs their memory
+	private volatile boolean useSoftReferences = false;
+	private final Map<Long, SoftEntry> softCache = new ConcurrentHashMap<Long, SoftEntry>();
+	private final ReferenceQueue<Instance> clearedSoftEntries = new ReferenceQueue<Instance>();
+	private final LongAdder evictions = new LongAdder();
+	private final LongAdder softHits = new LongAdder();
+	private final LongAdder softCleared = new LongAdder();
+
+	public InstanceCache() {
+		for (int i = 0; i < STRIPES; i++)
+			stripes[i] = new Stripe();
+	}
+
 	/**
 	 * 
 	 */
 	public void clear() {
-		cache.clear();
+		for (Stripe stripe : stripes)
+			stripe.clear();
+		softCache.clear();
+		pins.clear();
+		resetEvictionRetry();
 	}
 
 	/**
@@ -32,7 +84,18 @@ public class InstanceCache {
 	 * @return true if the cache contains the key; false otherwise
 	 */
 	public boolean containsKey(Object arg0) {
-		return cache.containsKey(arg0);
+		if (!(arg0 instanceof Long))
+			return false;
+		return containsKey(((Long) arg0).longValue());
+	}
+
+	public boolean containsKey(long dbID) {
+		if (stripe(dbID).contains(dbID))
+			return true;
+		if (!useSoftReferences)
+			return false;
+		SoftEntry softEntry = softCache.get(dbID);
+		return softEntry != null && softEntry.get() != null;
 	}
 
 	/**
@@ -40,14 +103,14 @@ public class InstanceCache {
 	 * @return true if the cache contains the value; false otherwise
 	 */
 	public boolean containsValue(GKInstance arg0) {
-		return cache.containsValue(arg0);
+		return arg0 != null && arg0.getDBID() != null && get(arg0.getDBID().longValue()) == arg0;
 	}
 
 	/**
-	 * @return Key/Value pairs of the cache as a set of Map Entry objects
+	 * @return Key/Value pairs of the cache (excluding soft references) as a set of Map Entry objects - a snapshot
 	 */
 	public Set<Map.Entry<Long, Instance>> entrySet() {
-		return cache.entrySet();
+		return entrySetMap().entrySet();
 	}
 
 	/**
@@ -55,41 +118,54 @@ public class InstanceCache {
 	 * @return GKInstance from cache
 	 */
 	public GKInstance get(Object arg0) {
-		return (GKInstance) cache.get(arg0);
+		if (!(arg0 instanceof Long))
+			return null;
+		return get(((Long) arg0).longValue());
 	}
 
 	public GKInstance get(long dbID) {
-		return (GKInstance) cache.get(new Long(dbID));
+		Instance instance = stripe(dbID).get(dbID);
+		if (instance != null || !useSoftReferences)
+			return (GKInstance) instance;
+		SoftEntry softEntry = softCache.get(dbID);
+		instance = softEntry == null ? null : softEntry.get();
+		if (instance == null)
+			return null;
+		// Promote back to the first tier
+		softHits.increment();
+		softCache.remove(dbID, softEntry);
+		put(dbID, instance);
+		return (GKInstance) instance;
 	}
 
 	/**
 	 * @return true if the cache is empty; false otherwise
 	 */
 	public boolean isEmpty() {
-		return cache.isEmpty();
+		return size() == 0;
 	}
 
 	/**
-	 * @return Set of all keys in the cache
+	 * @return Set of all keys in the cache (excluding soft references) - a snapshot
 	 */
 	public Set<Long> keySet() {
-		return cache.keySet();
+		return new HashSet<Long>(entrySetMap().keySet());
 	}
 
 	/**
 	 * @param arg0 Key to add to cache
 	 * @param arg1 Value (Instance object) to add to cache
-	 * @return Value (Instance object) added to the cache
+	 * @return Value (Instance object) previously cached for the key
 	 */
 	public GKInstance put(Object arg0, Instance arg1) {
 	    if (!(arg0 instanceof Long))
 	        throw new IllegalArgumentException("The first parameter must be a Long object!");
-		return (GKInstance) cache.put((Long)arg0, arg1);
+		return put(((Long) arg0).longValue(), arg1);
 	}
 
 	/**
 	 * @param arg0 Instance object to add to cache as a value (its db id will be used as the key)
-	 * @return Instance object added to cache
+	 * @return Instance object previously cached for its db id
 	 */
 	public Instance put(Instance arg0) {
 		return put(arg0.getDBID(), arg0);
@@ -98,21 +174,30 @@ public class InstanceCache {
 	/**
 	 * @param dbId Key (db id as long value) to add to cache
 	 * @param arg1 Value (GKInstance object) to add to cache
-	 * @return Value (GKInstance object) added to the cache
+	 * @return Value (GKInstance object) previously cached for the key
 	 */
 	public GKInstance put(long dbId, GKInstance arg1) {
-		return put(new Long(dbId), arg1);
+		return put(dbId, (Instance) arg1);
 	}
 
 	public GKInstance put(Long dbId, GKInstance arg1) {
-		return put(dbId, arg1);
+		return put(dbId.longValue(), (Instance) arg1);
+	}
+
+	private GKInstance put(long dbId, Instance instance) {
+		Instance previous = stripe(dbId).put(dbId, instance);
+		if (!softCache.isEmpty())
+			softCache.remove(dbId);
+		evict();
+		return (GKInstance) previous;
 	}
 
 	/**
 	 * @param arg0 Map of db id to Instance objects to add to the cache
 	 */
 	public void putAll(Map<Long, Instance> arg0) {
-		cache.putAll(arg0);
+		for (Map.Entry<Long, Instance> entry : arg0.entrySet())
+			put(entry.getKey().longValue(), entry.getValue());
 	}
 
 	/**
@@ -120,21 +205,383 @@ public class InstanceCache {
 	 * @return Value mapped to the removed key
 	 */
 	public Object remove(Object arg0) {
-		return cache.remove(arg0);
+		if (!(arg0 instanceof Long))
+			return null;
+		long dbId = ((Long) arg0).longValue();
+		Instance instance = stripe(dbId).remove(dbId);
+		SoftEntry softEntry = softCache.remove(arg0);
+		pins.remove(arg0);
+		if (instance != null)
+			return instance;
+		return softEntry == null ? null : softEntry.get();
 	}
 
 	/**
-	 * @return Size of the cache
+	 * @return Size of the cache (excluding soft references)
 	 */
 	public int size() {
-		return cache.size();
+		return size.get();
 	}
 
 	/**
-	 * @return Collection of all Instance objects in the cache
+	 * @return Collection of all Instance objects in the cache (excluding soft references) - a snapshot
 	 */
 	public Collection<Instance> values() {
-		return cache.values();
+		return new ArrayList<Instance>(entrySetMap().values());
+	}
+
+	/**
+	 * Keep the instance with the given db id in the cache for as long as whilePinned returns true
+	 * (e.g. while the transaction in which it is being written is open). Instances not in the cache are not pinned.
+	 * @param dbId db id of the instance to pin
+	 * @param whilePinned condition under which the instance must not be evicted
+	 */
+	public void pin(Long dbId, BooleanSupplier whilePinned) {
+		if (stripe(dbId).contains(dbId))
+			pins.put(dbId, whilePinned);
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * @param maxSize maximum number of instances in the cache (pinned instances may take it over this number)
+	 */
+	public void setMaxSize(int maxSize) {
+		this.maxSize = maxSize;
+		resetEvictionRetry();
+		evict();
+	}
+
+	public long getMaxWeight() {
+		return maxWeight;
+	}
+
+	/**
+	 * @param maxWeight maximum total weight of the instances in the cache (see the class comment)
+	 */
+	public void setMaxWeight(long maxWeight) {
+		this.maxWeight = maxWeight;
+		resetEvictionRetry();
+		evict();
+	}
+
+	public boolean isUseSoftReferences() {
+		return useSoftReferences;
+	}
+
+	/**
+	 * @param useSoftReferences if true, evicted instances are kept as soft references until the garbage collector
+	 *                          needs their memory
+	 */
+	public void setUseSoftReferences(boolean useSoftReferences) {
+		this.useSoftReferences = useSoftReferences;
+		if (!useSoftReferences)
+			softCache.clear();
+	}
+
+	public long getWeight() {
+		return weight.get();
+	}
+
+	public int getPinnedCount() {
+		return pins.size();
+	}
+
+	public int getSoftSize() {
+		return softCache.size();
+	}
+
+	public long getEvictionCount() {
+		return evictions.sum();
+	}
+
+	public long getSoftHitCount() {
+		return softHits.sum();
+	}
+
+	public long getSoftClearedCount() {
+		return softCleared.sum();
+	}
+
+	private Map<Long, Instance> entrySetMap() {
+		Map<Long, Instance> ret = new HashMap<Long, Instance>();
+		for (Stripe stripe : stripes)
+			stripe.copyTo(ret);
+		return ret;
+	}
+
+	// Evict instances until the cache is within its bounds, or until no more instances can be evicted (all pinned).
+	// The stripes are visited in turn, one instance being evicted from each - see Stripe.evictOne(). If the cache is
+	// still over its bounds, the sweep (of every instance) is not repeated until the cache has grown by another eighth
+	// in size or in weight, which keeps the cost of sweeping a cache of pinned instances constant per put on average
+	private void evict() {
+		if ((size.get() > maxSize || weight.get() > maxWeight) &&
+				(size.get() >= retrySize || weight.get() >= retryWeight)) {
+			synchronized (evictionLock) {
+				int unsuccessful = 0;
+				while ((size.get() > maxSize || weight.get() > maxWeight) && unsuccessful < STRIPES) {
+					Stripe stripe = stripes[clockStripe];
+					clockStripe = (clockStripe + 1) & (STRIPES - 1);
+					if (stripe.evictOne())
+						unsuccessful = 0;
+					else
+						unsuccessful++;
+				}
+				if (unsuccessful < STRIPES) {
+					retrySize = 0;
+					retryWeight = 0;
+				} else {
+					int currentSize = size.get();
+					long currentWeight = weight.get();
+					retrySize = currentSize + currentSize / 8 + 1;
+					retryWeight = currentWeight + currentWeight / 8 + 1;
+				}
+			}
+		}
+		// Forget the soft references whose instances have been garbage collected
+		Reference<? extends Instance> cleared;
+		while ((cleared = clearedSoftEntries.poll()) != null) {
+			SoftEntry softEntry = (SoftEntry) cleared;
+			if (softCache.remove(softEntry.dbId, softEntry))
+				softCleared.increment();
+		}
+	}
+
+	// Try evicting on the next put, whether or not the last sweep found anything to evict
+	private void resetEvictionRetry() {
+		synchronized (evictionLock) {
+			retrySize = 0;
+			retryWeight = 0;
+		}
+	}
+
+	private boolean isPinned(long dbId, Instance instance) {
+		if (instance instanceof GKInstance && ((GKInstance) instance).isDirty())
+			return true;
+		if (pins.isEmpty())
+			return false;
+		BooleanSupplier whilePinned = pins.get(dbId);
+		if (whilePinned == null)
+			return false;
+		if (whilePinned.getAsBoolean())
+			return true;
+		pins.remove(dbId, whilePinned);
+		return false;
+	}
+
+	private static int weigh(Instance instance) {
+		if (instance instanceof GKInstance)
+			return 1 + ((GKInstance) instance).getAttributes().size();
+		return 1;
+	}
+
+	// Spread the bits of a DB_ID (which are mostly sequential) over the whole long. Package-private for tests, which
+	// need DB_IDs that fall into the same slot of the same stripe
+	static long mix(long dbId) {
+		dbId ^= dbId >>> 33;
+		dbId *= 0xff51afd7ed558ccdL;
+		dbId ^= dbId >>> 33;
+		dbId *= 0xc4ceb9fe1a85ec53L;
+		dbId ^= dbId >>> 33;
+		return dbId;
+	}
+
+	private Stripe stripe(long dbId) {
+		// The top bits choose the stripe, the bottom ones the slot within the stripe
+		return stripes[(int) (mix(dbId) >>> 58)];
+	}
+
+	/**
+	 * Open-addressing (linear probing) hash table from DB_IDs to Instances. Slot i is empty if values[i] is null;
+	 * removals shift the following entries back, so there are no tombstones. referenced[i] is the CLOCK bit of slot i,
+	 * set on each access and cleared by the eviction sweep.
+	 */
+	private final class Stripe {
+		private long[] keys;
+		private Instance[] values;
+		private int[] weights;
+		private boolean[] referenced;
+		private int count;
+		private int hand;
+
+		private Stripe() {
+			allocate(16);
+		}
+
+		private void allocate(int capacity) {
+			keys = new long[capacity];
+			values = new Instance[capacity];
+			weights = new int[capacity];
+			referenced = new boolean[capacity];
+			count = 0;
+			hand = 0;
+		}
+
+		// Index of the slot holding dbId, or -1
+		private int indexOf(long dbId) {
+			int mask = keys.length - 1;
+			for (int i = (int) mix(dbId) & mask; values[i] != null; i = (i + 1) & mask) {
+				if (keys[i] == dbId)
+					return i;
+			}
+			return -1;
+		}
+
+		synchronized boolean contains(long dbId) {
+			return indexOf(dbId) >= 0;
+		}
+
+		synchronized Instance get(long dbId) {
+			int i = indexOf(dbId);
+			if (i < 0)
+				return null;
+			referenced[i] = true;
+			// Instance may have been inflated since it was last weighed
+			int newWeight = weigh(values[i]);
+			if (newWeight != weights[i]) {
+				weight.addAndGet(newWeight - weights[i]);
+				weights[i] = newWeight;
+			}
+			return values[i];
+		}
+
+		synchronized Instance put(long dbId, Instance instance) {
+			int newWeight = weigh(instance);
+			int i = indexOf(dbId);
+			if (i >= 0) {
+				Instance previous = values[i];
+				weight.addAndGet(newWeight - weights[i]);
+				values[i] = instance;
+				weights[i] = newWeight;
+				referenced[i] = true;
+				return previous;
+			}
+			if ((count + 1) * 4 > keys.length * 3)
+				resize(keys.length * 2);
+			int mask = keys.length - 1;
+			for (i = (int) mix(dbId) & mask; values[i] != null; i = (i + 1) & mask)
+				;
+			keys[i] = dbId;
+			values[i] = instance;
+			weights[i] = newWeight;
+			referenced[i] = true;
+			count++;
+			size.incrementAndGet();
+			weight.addAndGet(newWeight);
+			return null;
+		}
+
+		synchronized Instance remove(long dbId) {
+			int i = indexOf(dbId);
+			if (i < 0)
+				return null;
+			Instance instance = values[i];
+			delete(i);
+			return instance;
+		}
+
+		/**
+		 * Advance the clock hand until an instance that has not been used since the hand last passed it
+		 * (and is not pinned) is found, and evict it
+		 * @return true if an instance was evicted; false if there was none to evict in this stripe
+		 */
+		synchronized boolean evictOne() {
+			int mask = keys.length - 1;
+			for (int steps = 0; steps < 2 * keys.length && count > 0; steps++) {
+				int i = hand;
+				hand = (hand + 1) & mask;
+				if (values[i] == null)
+					continue;
+				if (referenced[i]) {
+					referenced[i] = false;
+					continue;
+				}
+				if (isPinned(keys[i], values[i]))
+					continue;
+				long dbId = keys[i];
+				Instance instance = values[i];
+				delete(i);
+				// Another entry may have been shifted into slot i - look at it next
+				hand = i;
+				evictions.increment();
+				if (useSoftReferences)
+					softCache.put(dbId, new SoftEntry(dbId, instance, clearedSoftEntries));
+				return true;
+			}
+			return false;
+		}
+
+		synchronized void clear() {
+			size.addAndGet(-count);
+			long stripeWeight = 0;
+			for (int i = 0; i < keys.length; i++) {
+				if (values[i] != null)
+					stripeWeight += weights[i];
+			}
+			weight.addAndGet(-stripeWeight);
+			allocate(16);
+		}
+
+		synchronized void copyTo(Map<Long, Instance> map) {
+			for (int i = 0; i < keys.length; i++) {
+				if (values[i] != null)
+					map.put(keys[i], values[i]);
+			}
+		}
+
+		private void resize(int capacity) {
+			long[] oldKeys = keys;
+			Instance[] oldValues = values;
+			int[] oldWeights = weights;
+			boolean[] oldReferenced = referenced;
+			int oldCount = count;
+			allocate(capacity);
+			int mask = capacity - 1;
+			for (int j = 0; j < oldKeys.length; j++) {
+				if (oldValues[j] == null)
+					continue;
+				int i = (int) mix(oldKeys[j]) & mask;
+				while (values[i] != null)
+					i = (i + 1) & mask;
+				keys[i] = oldKeys[j];
+				values[i] = oldValues[j];
+				weights[i] = oldWeights[j];
+				referenced[i] = oldReferenced[j];
+			}
+			count = oldCount;
+		}
+
+		// Empty slot i, then shift back the entries following it that would otherwise no longer be found
+		private void delete(int i) {
+			count--;
+			size.decrementAndGet();
+			weight.addAndGet(-weights[i]);
+			int mask = keys.length - 1;
+			values[i] = null;
+			for (int j = (i + 1) & mask; values[j] != null; j = (j + 1) & mask) {
+				int home = (int) mix(keys[j]) & mask;
+				// Move entry j to slot i unless its home slot lies (cyclically) after i, up to j
+				if (((j - home) & mask) >= ((j - i) & mask)) {
+					keys[i] = keys[j];
+					values[i] = values[j];
+					weights[i] = weights[j];
+					referenced[i] = referenced[j];
+					values[j] = null;
+					i = j;
+				}
+			}
+		}
+	}
+
+	private static class SoftEntry extends SoftReference<Instance> {
+		private final Long dbId;
+
+		private SoftEntry(Long dbId, Instance instance, ReferenceQueue<Instance> queue) {
+			super(instance, queue);
+			this.dbId = dbId;
+		}
 	}
 
 }
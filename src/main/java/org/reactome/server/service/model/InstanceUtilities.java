@@ -63,7 +63,10 @@ public class InstanceUtilities {
 		List current = new ArrayList();
 		current.add(instance);
 		Map out = new HashMap();
+		FrontierTraversal traversal = new FrontierTraversal();
 		while(! current.isEmpty()) {
+			// Load the attribute values followed for all the current instances at once, rather than one by one below
+			traversal.prefetch(current, instructions, false);
 			List values = new ArrayList();
 			for (Iterator ci = current.iterator(); ci.hasNext();) {
 				GKInstance currentInstance = (GKInstance) ci.next();
@@ -105,7 +108,10 @@ public class InstanceUtilities {
 		List current = new ArrayList();
 		current.add(instance);
 		Map out = new HashMap();
+		FrontierTraversal traversal = new FrontierTraversal();
 		while(! current.isEmpty()) {
+			// Load the attribute values followed for all the current instances at once, rather than one by one below
+			traversal.prefetch(current, instructions, true);
 			List values = new ArrayList();
 			for (Iterator ci = current.iterator(); ci.hasNext();) {
 				GKInstance currentInstance = (GKInstance) ci.next();
@@ -1120,7 +1126,10 @@ public class InstanceUtilities {
          Set<GKInstance> current = new HashSet<GKInstance>();
          current.add(container);
          Set<GKInstance> next = new HashSet<GKInstance>();
+         FrontierTraversal traversal = new FrontierTraversal();
          while (current.size() > 0) {
+             // Load the values of attNames for all the current instances at once, rather than one by one below
+             traversal.prefetch(current, attNames);
              for (GKInstance tmp : current) {
                  // Just in case there is a self-cycle
                  if (checkedIds.contains(tmp.getDBID()))
@@ -4,6 +4,7 @@
 package org.reactome.server.service.model;
 
 import java.util.Collection;
+import java.util.Map;
 
 import org.reactome.server.service.schema.Schema;
 import org.reactome.server.service.schema.SchemaAttribute;
@@ -34,6 +35,8 @@ public interface PersistenceAdaptor {
 	public void loadInstanceAttributeValues(GKInstance instance,
 	                                        SchemaAttribute attribute) throws Exception;
 
+	public void loadTraversalAttributeValues(Map<GKInstance, ? extends Collection<String>> instance2AttNames) throws Exception;
+
 	public void updateInstanceAttribute(GKInstance instance, String attributeName, Transaction tx) throws Exception;
 
 	public Long storeInstance(GKInstance instance, Transaction tx) throws Exception;
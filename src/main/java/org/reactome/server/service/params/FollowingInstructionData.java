@@ -0,0 +1,45 @@
+package org.reactome.server.service.params;
+
+import java.util.Collections;
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+public class FollowingInstructionData {
+    private String className;
+    private List<String> attributes;
+    private List<String> reverseAttributes;
+
+    public FollowingInstructionData(
+            @JsonProperty("className") String className,
+            @JsonProperty("attributes") List<String> attributes,
+            @JsonProperty("reverseAttributes") List<String> reverseAttributes) {
+        this.className = className;
+        this.attributes = attributes != null ? attributes : Collections.emptyList();
+        this.reverseAttributes = reverseAttributes != null ? reverseAttributes : Collections.emptyList();
+    }
+
+    public String getClassName() {
+        return className;
+    }
+
+    public void setClassName(String className) {
+        this.className = className;
+    }
+
+    public List<String> getAttributes() {
+        return attributes;
+    }
+
+    public void setAttributes(List<String> attributes) {
+        this.attributes = attributes;
+    }
+
+    public List<String> getReverseAttributes() {
+        return reverseAttributes;
+    }
+
+    public void setReverseAttributes(List<String> reverseAttributes) {
+        this.reverseAttributes = reverseAttributes;
+    }
+}
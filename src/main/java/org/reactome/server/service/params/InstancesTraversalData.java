@@ -0,0 +1,67 @@
+package org.reactome.server.service.params;
+
+import java.util.Collections;
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+public class InstancesTraversalData {
+    private List<Long> dbIds;
+    private List<FollowingInstructionData> instructions;
+    private List<String> classNames;
+    private boolean returnListed;
+    private boolean strictly;
+
+    public InstancesTraversalData(
+            @JsonProperty("dbIds") List<Long> dbIds,
+            @JsonProperty("instructions") List<FollowingInstructionData> instructions,
+            @JsonProperty("classNames") List<String> classNames,
+            @JsonProperty("returnListed") Boolean returnListed,
+            @JsonProperty("strictly") Boolean strictly) {
+        this.dbIds = dbIds != null ? dbIds : Collections.emptyList();
+        this.instructions = instructions != null ? instructions : Collections.emptyList();
+        this.classNames = classNames != null ? classNames : Collections.emptyList();
+        this.returnListed = returnListed == null || returnListed;
+        this.strictly = strictly != null && strictly;
+    }
+
+    public List<Long> getDbIds() {
+        return dbIds;
+    }
+
+    public void setDbIds(List<Long> dbIds) {
+        this.dbIds = dbIds;
+    }
+
+    public List<FollowingInstructionData> getInstructions() {
+        return instructions;
+    }
+
+    public void setInstructions(List<FollowingInstructionData> instructions) {
+        this.instructions = instructions;
+    }
+
+    public List<String> getClassNames() {
+        return classNames;
+    }
+
+    public void setClassNames(List<String> classNames) {
+        this.classNames = classNames;
+    }
+
+    public boolean isReturnListed() {
+        return returnListed;
+    }
+
+    public void setReturnListed(boolean returnListed) {
+        this.returnListed = returnListed;
+    }
+
+    public boolean isStrictly() {
+        return strictly;
+    }
+
+    public void setStrictly(boolean strictly) {
+        this.strictly = strictly;
+    }
+}
@@ -0,0 +1,48 @@
+package org.reactome.server.service.persistence;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Counters and gauges describing what Neo4JAdaptor is doing (e.g. which attribute loading strategies it chooses).
+ * Counters are cheap to update from many threads at once; gauges are read only when a snapshot is taken.
+ */
+public class AdaptorMetrics {
+    private final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+    private final Map<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+
+    public void increment(String name) {
+        add(name, 1);
+    }
+
+    public void add(String name, long value) {
+        counters.computeIfAbsent(name, k -> new LongAdder()).add(value);
+    }
+
+    /**
+     * Register a value that is computed whenever a snapshot is taken, e.g. the current size of a queue
+     *
+     * @param name  name of the gauge
+     * @param gauge supplier of the current value
+     */
+    public void gauge(String name, LongSupplier gauge) {
+        gauges.put(name, gauge);
+    }
+
+    /**
+     * @return current values of all counters and gauges, sorted by name
+     */
+    public Map<String, Long> snapshot() {
+        Map<String, Long> ret = new TreeMap<>();
+        counters.forEach((name, counter) -> ret.put(name, counter.sum()));
+        gauges.forEach((name, gauge) -> ret.put(name, gauge.getAsLong()));
+        return ret;
+    }
+
+    public void reset() {
+        counters.clear();
+    }
+}
@@ -0,0 +1,85 @@
+package org.reactome.server.service.persistence;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.ToLongFunction;
+
+/**
+ * Decides how values of attributes of instances of a class should be loaded when AttributeValueCache is in use:
+ * either for all instances of the class at once, into AttributeValueCache (PRELOAD) - which pays off when the class
+ * is small or a good fraction of its instances is requested - or just for the requested instances, by DB_ID,
+ * bypassing AttributeValueCache (TARGETED). The number of instances of each class is taken from the label counts
+ * in the database, and remembered until clear() is called.
+ */
+public class AttributeLoadPlanner {
+    public enum Strategy {
+        // All values needed are in AttributeValueCache already
+        CACHED,
+        // Load the values of all instances of the class into AttributeValueCache
+        PRELOAD,
+        // Load the values of the requested instances only
+        TARGETED
+    }
+
+    public static final long DEFAULT_PRELOAD_CLASS_SIZE = 10000;
+    public static final double DEFAULT_PRELOAD_RATIO = 0.05;
+
+    private final ToLongFunction<String> classInstanceCounter;
+    private final AdaptorMetrics metrics;
+    private final Map<String, Long> classInstanceCounts = new ConcurrentHashMap<>();
+    // Classes with at most that many instances are always preloaded
+    private long preloadClassSize = DEFAULT_PRELOAD_CLASS_SIZE;
+    // Classes are preloaded when at least that fraction of their instances is requested
+    private double preloadRatio = DEFAULT_PRELOAD_RATIO;
+
+    public AttributeLoadPlanner(ToLongFunction<String> classInstanceCounter, AdaptorMetrics metrics) {
+        this.classInstanceCounter = classInstanceCounter;
+        this.metrics = metrics;
+    }
+
+    /**
+     * @param className      class of the instances
+     * @param requestedCount number of instances of className whose attribute values are needed
+     * @param cached         true if all the attribute values needed are in AttributeValueCache already
+     * @return the strategy to use for loading the attribute values
+     */
+    public Strategy plan(String className, int requestedCount, boolean cached) {
+        Strategy strategy;
+        if (cached) {
+            strategy = Strategy.CACHED;
+        } else {
+            long classCount = classInstanceCounts.computeIfAbsent(className, classInstanceCounter::applyAsLong);
+            if (classCount <= preloadClassSize || requestedCount >= classCount * preloadRatio) {
+                strategy = Strategy.PRELOAD;
+            } else {
+                strategy = Strategy.TARGETED;
+            }
+        }
+        metrics.increment("attributes.load.strategy." + strategy.name().toLowerCase());
+        metrics.add("attributes.load.instances." + strategy.name().toLowerCase(), requestedCount);
+        return strategy;
+    }
+
+    public long getPreloadClassSize() {
+        return preloadClassSize;
+    }
+
+    public void setPreloadClassSize(long preloadClassSize) {
+        this.preloadClassSize = preloadClassSize;
+    }
+
+    public double getPreloadRatio() {
+        return preloadRatio;
+    }
+
+    public void setPreloadRatio(double preloadRatio) {
+        this.preloadRatio = preloadRatio;
+    }
+
+    /**
+     * Forget the numbers of instances per class, e.g. after instances have been stored or deleted
+     */
+    public void clear() {
+        classInstanceCounts.clear();
+    }
+}
@@ -0,0 +1,97 @@
+package org.reactome.server.service.persistence;
+
+import org.neo4j.driver.QueryRunner;
+import org.neo4j.driver.Result;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Builder of a Cypher statement in which all literal values are passed as $-parameters rather than being
+ * concatenated into the statement text. Statements built this way differ only in their parameter maps, so
+ * Neo4J can re-use the cached plan for them and there is no need to escape values (e.g. quotes or regex
+ * meta-characters) before sending them to the database.
+ * Labels, relationship types and property names cannot be parameterised in Cypher - these are appended as
+ * text and must come from the schema.
+ */
+public class CypherQuery {
+    private final StringBuilder text = new StringBuilder();
+    private final Map<String, Object> parameters = new HashMap<>();
+
+    public CypherQuery() {
+    }
+
+    public CypherQuery(String text) {
+        this.text.append(text);
+    }
+
+    /**
+     * Append a fragment of Cypher text (labels, property names, keywords) to the statement
+     *
+     * @param fragment Cypher text
+     * @return this CypherQuery
+     */
+    public CypherQuery append(Object fragment) {
+        text.append(fragment);
+        return this;
+    }
+
+    /**
+     * Register value as a new parameter of the statement
+     *
+     * @param value parameter value
+     * @return placeholder (e.g. $p0) to use for value in the statement text
+     */
+    public String param(Object value) {
+        String name = "p" + parameters.size();
+        parameters.put(name, value);
+        return "$" + name;
+    }
+
+    /**
+     * Register value as a parameter with the given name; used for statements that are fixed apart from their
+     * parameters, e.g. UNWIND $rows AS row ...
+     *
+     * @param name  parameter name (without $)
+     * @param value parameter value
+     * @return this CypherQuery
+     */
+    public CypherQuery param(String name, Object value) {
+        parameters.put(name, value);
+        return this;
+    }
+
+    /**
+     * Register value as a new parameter and append its placeholder to the statement text
+     *
+     * @param value parameter value
+     * @return this CypherQuery
+     */
+    public CypherQuery appendParam(Object value) {
+        text.append(param(value));
+        return this;
+    }
+
+    public String getText() {
+        return text.toString();
+    }
+
+    public Map<String, Object> getParameters() {
+        return parameters;
+    }
+
+    /**
+     * Run the statement in the session or transaction: runner
+     *
+     * @param runner Session or Transaction
+     * @return Result of the statement
+     */
+    public Result run(QueryRunner runner) {
+        return runner.run(getText(), parameters);
+    }
+
+    @Override
+    public String toString() {
+        return text + " " + parameters;
+    }
+}
@@ -0,0 +1,112 @@
+package org.reactome.server.service.persistence;
+
+import org.neo4j.driver.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Hands out new DB_IDs from ranges reserved in the database in blocks. Each block is reserved with a single
+ * atomic add on the dbIdSeq Seq node (in its own transaction, so that a rolled back store never gives back
+ * DB_IDs that may already have been handed out), after which DB_IDs are taken from the block without
+ * any database access or locking. DB_IDs left unused in the current block when the service stops are
+ * simply never used - gaps in the DB_ID sequence are expected.
+ */
+public class DbIdAllocator {
+    public static final int DEFAULT_BLOCK_SIZE = 1000;
+
+    private static final String RESERVE_QUERY =
+            "MATCH (s:Seq {key:\"dbIdSeq\"}) CALL apoc.atomic.add(s,'value',$size,10) YIELD newValue as seq RETURN seq";
+
+    private final Driver driver;
+    private final String database;
+    private final int blockSize;
+    private final AtomicReference<Block> current = new AtomicReference<>(Block.EMPTY);
+    private final Object reserveLock = new Object();
+
+    public DbIdAllocator(Driver driver, String database, int blockSize) {
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("DB_ID block size must be positive: " + blockSize);
+        }
+        this.driver = driver;
+        this.database = database;
+        this.blockSize = blockSize;
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    /**
+     * @return a new DB_ID
+     * @throws Exception if a new block of DB_IDs could not be reserved in the database
+     */
+    public long allocate() throws Exception {
+        while (true) {
+            Block block = current.get();
+            long dbId = block.next.getAndIncrement();
+            if (dbId <= block.last) {
+                return dbId;
+            }
+            // block is used up - the first thread to get here replaces it, the others wait and re-try
+            synchronized (reserveLock) {
+                if (current.get() == block) {
+                    current.set(reserve(blockSize));
+                }
+            }
+        }
+    }
+
+    /**
+     * @param count number of DB_IDs required
+     * @return count new DB_IDs, in ascending order. Requests for at least a whole block are served from a
+     * range of their own, hence are contiguous.
+     * @throws Exception if a new block of DB_IDs could not be reserved in the database
+     */
+    public List<Long> allocate(int count) throws Exception {
+        if (count < 1) {
+            throw new IllegalArgumentException("The number of DB_IDs to mint must be positive: " + count);
+        }
+        List<Long> dbIds = new ArrayList<>(count);
+        if (count >= blockSize) {
+            Block block = reserve(count);
+            for (long dbId = block.next.get(); dbId <= block.last; dbId++) {
+                dbIds.add(dbId);
+            }
+        } else {
+            for (int i = 0; i < count; i++) {
+                dbIds.add(allocate());
+            }
+        }
+        return dbIds;
+    }
+
+    // Reserve in the database the next size DB_IDs
+    private Block reserve(int size) throws Exception {
+        try (Session session = driver.session(SessionConfig.forDatabase(database))) {
+            Transaction tx = session.beginTransaction();
+            Result result = tx.run(RESERVE_QUERY, Values.parameters("size", size));
+            if (!result.hasNext()) {
+                throw (new Exception("Unable to get auto-incremented dbID value."));
+            }
+            long last = result.next().get(0).asLong();
+            tx.commit();
+            return new Block(last - size + 1, last);
+        }
+    }
+
+    // A range of DB_IDs: next, ..., last
+    private static class Block {
+        static final Block EMPTY = new Block(1, 0);
+
+        final AtomicLong next;
+        final long last;
+
+        Block(long first, long last) {
+            this.next = new AtomicLong(first);
+            this.last = last;
+        }
+    }
+}
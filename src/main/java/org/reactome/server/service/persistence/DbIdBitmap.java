@@ -0,0 +1,466 @@
+package org.reactome.server.service.persistence;
+
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.LongConsumer;
+
+/**
+ * Compressed set of DB_IDs, organised like a Roaring bitmap: DB_IDs are grouped by their upper 48 bits into chunks of
+ * 65536 consecutive values, and the lower 16 bits of the DB_IDs in each chunk are kept either in a sorted char array
+ * (up to 4096 values) or in a 65536-bit bitmap (when denser). Mostly contiguous DB_IDs, as minted by DbIdAllocator,
+ * take about one bit each, and membership tests, intersections and differences need no boxing.
+ * Safe for concurrent use; and() and andNot() require the argument not to be modified while they run.
+ */
+public class DbIdBitmap {
+    // Chunks with more values than this are kept as bitmaps
+    private static final int MAX_ARRAY_SIZE = 4096;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    // Upper 48 bits of the DB_IDs in each chunk, ascending; keys[0..size) are in use
+    private long[] keys = new long[4];
+    private Container[] containers = new Container[4];
+    private int size = 0;
+
+    public DbIdBitmap() {
+    }
+
+    public static DbIdBitmap of(Collection<Long> dbIds) {
+        DbIdBitmap bitmap = new DbIdBitmap();
+        for (Long dbId : dbIds) {
+            if (dbId != null) {
+                bitmap.add(dbId);
+            }
+        }
+        return bitmap;
+    }
+
+    /**
+     * @param dbId DB_ID to add
+     * @return true if dbId was not in the set already
+     */
+    public boolean add(long dbId) {
+        lock.writeLock().lock();
+        try {
+            long key = dbId >> 16;
+            int i = indexOf(key);
+            if (i < 0) {
+                i = -i - 1;
+                insertAt(i, key, new ArrayContainer());
+            }
+            Container container = containers[i];
+            int cardinality = container.cardinality();
+            containers[i] = container.add((char) dbId);
+            return containers[i].cardinality() != cardinality;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @param dbId DB_ID to remove
+     * @return true if dbId was in the set
+     */
+    public boolean remove(long dbId) {
+        lock.writeLock().lock();
+        try {
+            int i = indexOf(dbId >> 16);
+            if (i < 0) {
+                return false;
+            }
+            Container container = containers[i];
+            int cardinality = container.cardinality();
+            container = container.remove((char) dbId);
+            if (container.cardinality() == 0) {
+                removeAt(i);
+            } else {
+                containers[i] = container;
+            }
+            return container.cardinality() != cardinality;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public boolean contains(long dbId) {
+        lock.readLock().lock();
+        try {
+            int i = indexOf(dbId >> 16);
+            return i >= 0 && containers[i].contains((char) dbId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public long getCardinality() {
+        lock.readLock().lock();
+        try {
+            long cardinality = 0;
+            for (int i = 0; i < size; i++) {
+                cardinality += containers[i].cardinality();
+            }
+            return cardinality;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public boolean isEmpty() {
+        return getCardinality() == 0;
+    }
+
+    /**
+     * @return approximate number of bytes taken by the DB_IDs
+     */
+    public long getSizeInBytes() {
+        lock.readLock().lock();
+        try {
+            long bytes = size * 16L;
+            for (int i = 0; i < size; i++) {
+                bytes += containers[i].sizeInBytes();
+            }
+            return bytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param other set of DB_IDs
+     * @return new set with the DB_IDs in both this set and other
+     */
+    public DbIdBitmap and(DbIdBitmap other) {
+        DbIdBitmap result = new DbIdBitmap();
+        lock.readLock().lock();
+        try {
+            for (int i = 0; i < size; i++) {
+                int j = other.indexOf(keys[i]);
+                if (j >= 0) {
+                    Container container = containers[i].and(other.containers[j]);
+                    if (container.cardinality() > 0) {
+                        result.insertAt(result.size, keys[i], container);
+                    }
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return result;
+    }
+
+    /**
+     * @param other set of DB_IDs
+     * @return new set with the DB_IDs in this set but not in other
+     */
+    public DbIdBitmap andNot(DbIdBitmap other) {
+        DbIdBitmap result = new DbIdBitmap();
+        lock.readLock().lock();
+        try {
+            for (int i = 0; i < size; i++) {
+                int j = other.indexOf(keys[i]);
+                Container container = j < 0 ? containers[i].copy() : containers[i].andNot(other.containers[j]);
+                if (container.cardinality() > 0) {
+                    result.insertAt(result.size, keys[i], container);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return result;
+    }
+
+    /**
+     * Pass all DB_IDs in the set to consumer, in ascending order
+     *
+     * @param consumer consumer of the DB_IDs
+     */
+    public void forEach(LongConsumer consumer) {
+        lock.readLock().lock();
+        try {
+            for (int i = 0; i < size; i++) {
+                containers[i].forEach(keys[i] << 16, consumer);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return all DB_IDs in the set, in ascending order
+     */
+    public Set<Long> toSet() {
+        Set<Long> set = new LinkedHashSet<>();
+        forEach(set::add);
+        return set;
+    }
+
+    /**
+     * @return the DB_IDs in the set as ascending, non-overlapping ranges [first, last] of consecutive DB_IDs
+     */
+    public List<long[]> toRanges() {
+        List<long[]> ranges = new ArrayList<>();
+        forEach(dbId -> {
+            long[] last = ranges.isEmpty() ? null : ranges.get(ranges.size() - 1);
+            if (last != null && last[1] == dbId - 1) {
+                last[1] = dbId;
+            } else {
+                ranges.add(new long[]{dbId, dbId});
+            }
+        });
+        return ranges;
+    }
+
+    // Index of key in keys, or -(insertion point) - 1 if not there
+    private int indexOf(long key) {
+        return Arrays.binarySearch(keys, 0, size, key);
+    }
+
+    private void insertAt(int i, long key, Container container) {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            containers = Arrays.copyOf(containers, size * 2);
+        }
+        System.arraycopy(keys, i, keys, i + 1, size - i);
+        System.arraycopy(containers, i, containers, i + 1, size - i);
+        keys[i] = key;
+        containers[i] = container;
+        size++;
+    }
+
+    private void removeAt(int i) {
+        System.arraycopy(keys, i + 1, keys, i, size - i - 1);
+        System.arraycopy(containers, i + 1, containers, i, size - i - 1);
+        containers[--size] = null;
+    }
+
+    // Lower 16 bits of the DB_IDs in a chunk. add() and remove() return the container to use from then on, which is
+    // a different one when the representation changes.
+    private interface Container {
+        int cardinality();
+
+        boolean contains(char value);
+
+        Container add(char value);
+
+        Container remove(char value);
+
+        Container and(Container other);
+
+        Container andNot(Container other);
+
+        Container copy();
+
+        void forEach(long base, LongConsumer consumer);
+
+        long sizeInBytes();
+    }
+
+    private static class ArrayContainer implements Container {
+        private char[] values;
+        private int cardinality;
+
+        ArrayContainer() {
+            this(new char[4], 0);
+        }
+
+        ArrayContainer(char[] values, int cardinality) {
+            this.values = values;
+            this.cardinality = cardinality;
+        }
+
+        public int cardinality() {
+            return cardinality;
+        }
+
+        public boolean contains(char value) {
+            return Arrays.binarySearch(values, 0, cardinality, value) >= 0;
+        }
+
+        public Container add(char value) {
+            int i = Arrays.binarySearch(values, 0, cardinality, value);
+            if (i >= 0) {
+                return this;
+            }
+            if (cardinality == MAX_ARRAY_SIZE) {
+                return toBitmap().add(value);
+            }
+            i = -i - 1;
+            if (cardinality == values.length) {
+                values = Arrays.copyOf(values, Math.max(4, Math.min(cardinality * 2, MAX_ARRAY_SIZE)));
+            }
+            System.arraycopy(values, i, values, i + 1, cardinality - i);
+            values[i] = value;
+            cardinality++;
+            return this;
+        }
+
+        public Container remove(char value) {
+            int i = Arrays.binarySearch(values, 0, cardinality, value);
+            if (i >= 0) {
+                System.arraycopy(values, i + 1, values, i, cardinality - i - 1);
+                cardinality--;
+            }
+            return this;
+        }
+
+        public Container and(Container other) {
+            char[] result = new char[cardinality];
+            int count = 0;
+            for (int i = 0; i < cardinality; i++) {
+                if (other.contains(values[i])) {
+                    result[count++] = values[i];
+                }
+            }
+            return new ArrayContainer(result, count);
+        }
+
+        public Container andNot(Container other) {
+            char[] result = new char[cardinality];
+            int count = 0;
+            for (int i = 0; i < cardinality; i++) {
+                if (!other.contains(values[i])) {
+                    result[count++] = values[i];
+                }
+            }
+            return new ArrayContainer(result, count);
+        }
+
+        public Container copy() {
+            return new ArrayContainer(Arrays.copyOf(values, cardinality), cardinality);
+        }
+
+        public void forEach(long base, LongConsumer consumer) {
+            for (int i = 0; i < cardinality; i++) {
+                consumer.accept(base | values[i]);
+            }
+        }
+
+        public long sizeInBytes() {
+            return 2L * values.length;
+        }
+
+        private BitmapContainer toBitmap() {
+            BitmapContainer bitmap = new BitmapContainer();
+            for (int i = 0; i < cardinality; i++) {
+                bitmap.add(values[i]);
+            }
+            return bitmap;
+        }
+    }
+
+    private static class BitmapContainer implements Container {
+        private final long[] words;
+        private int cardinality;
+
+        BitmapContainer() {
+            this(new long[1024], 0);
+        }
+
+        BitmapContainer(long[] words, int cardinality) {
+            this.words = words;
+            this.cardinality = cardinality;
+        }
+
+        public int cardinality() {
+            return cardinality;
+        }
+
+        public boolean contains(char value) {
+            return (words[value >>> 6] & (1L << value)) != 0;
+        }
+
+        public Container add(char value) {
+            long word = words[value >>> 6];
+            long updated = word | (1L << value);
+            if (updated != word) {
+                words[value >>> 6] = updated;
+                cardinality++;
+            }
+            return this;
+        }
+
+        public Container remove(char value) {
+            long word = words[value >>> 6];
+            long updated = word & ~(1L << value);
+            if (updated != word) {
+                words[value >>> 6] = updated;
+                cardinality--;
+                if (cardinality <= MAX_ARRAY_SIZE) {
+                    return toArray();
+                }
+            }
+            return this;
+        }
+
+        public Container and(Container other) {
+            if (other instanceof BitmapContainer) {
+                long[] result = new long[words.length];
+                int count = 0;
+                for (int i = 0; i < words.length; i++) {
+                    result[i] = words[i] & ((BitmapContainer) other).words[i];
+                    count += Long.bitCount(result[i]);
+                }
+                return new BitmapContainer(result, count).shrink();
+            }
+            // The result is no larger than the array
+            return other.and(this);
+        }
+
+        public Container andNot(Container other) {
+            long[] result = words.clone();
+            int count = cardinality;
+            if (other instanceof BitmapContainer) {
+                count = 0;
+                for (int i = 0; i < words.length; i++) {
+                    result[i] &= ~((BitmapContainer) other).words[i];
+                    count += Long.bitCount(result[i]);
+                }
+            } else {
+                ArrayContainer array = (ArrayContainer) other;
+                for (int i = 0; i < array.cardinality; i++) {
+                    char value = array.values[i];
+                    if ((result[value >>> 6] & (1L << value)) != 0) {
+                        result[value >>> 6] &= ~(1L << value);
+                        count--;
+                    }
+                }
+            }
+            return new BitmapContainer(result, count).shrink();
+        }
+
+        public Container copy() {
+            return new BitmapContainer(words.clone(), cardinality);
+        }
+
+        public void forEach(long base, LongConsumer consumer) {
+            for (int i = 0; i < words.length; i++) {
+                long word = words[i];
+                while (word != 0) {
+                    consumer.accept(base | (i << 6) | Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+        }
+
+        public long sizeInBytes() {
+            return 8L * words.length;
+        }
+
+        private Container shrink() {
+            return cardinality <= MAX_ARRAY_SIZE ? toArray() : this;
+        }
+
+        private ArrayContainer toArray() {
+            char[] values = new char[cardinality];
+            int count = 0;
+            for (int i = 0; i < words.length; i++) {
+                long word = words[i];
+                while (word != 0) {
+                    values[count++] = (char) ((i << 6) | Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+            return new ArrayContainer(values, count);
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package org.reactome.server.service.persistence;
+
+import org.neo4j.driver.*;
+import org.reactome.server.service.schema.GKSchema;
+import org.reactome.server.service.schema.GKSchemaClass;
+import org.reactome.server.service.schema.SchemaClass;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+
+/**
+ * Checks (at start-up) that lookups of instances by DB_ID are backed by indexes: on the root class of the schema
+ * (DatabaseObject) - through which lookups by DB_ID alone go - and on each class of the schema, through which
+ * lookups such as MATCH (n:Pathway{DB_ID:$p}) go. Either an index or a uniqueness constraint (which comes with an index)
+ * on DB_ID will do. Missing indexes are created only if createMissing is set, since populating them takes a while on
+ * a large database; otherwise they are just reported. Indexes rather than uniqueness constraints are created, so that
+ * databases with duplicate DB_IDs (see Neo4JAdaptor.fetchStableIdentifiersWithDuplicateDBIds()) are not rejected.
+ */
+public class IndexBootstrapper {
+    private static final Logger infoLogger = LoggerFactory.getLogger("infoLogger");
+
+    // State of a class for which no DB_ID index exists
+    public static final String MISSING = "MISSING";
+
+    private final Neo4JAdaptor adaptor;
+    private final boolean createMissing;
+
+    public IndexBootstrapper(Neo4JAdaptor adaptor, boolean createMissing) {
+        this.adaptor = adaptor;
+        this.createMissing = createMissing;
+    }
+
+    /**
+     * Check the DB_ID indexes, create the missing ones (if createMissing is set) and log their state
+     */
+    public void bootstrap() {
+        try {
+            List<DbIdIndex> indexes = check();
+            List<String> missing = new ArrayList<>();
+            for (DbIdIndex index : indexes) {
+                if (index.getState().equals(MISSING)) {
+                    missing.add(index.getLabel());
+                }
+            }
+            if (!missing.isEmpty() && createMissing) {
+                create(missing);
+                indexes = check();
+                missing.clear();
+            }
+            infoLogger.info("DB_ID indexes: " + (indexes.size() - missing.size()) + " of " + indexes.size() +
+                    " classes indexed" + (missing.isEmpty() ? "" : "; missing: " + missing));
+        } catch (Exception e) {
+            // Not fatal - lookups just get slower
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * @return state of the DB_ID index of each class of the schema, starting from the root class and walking down
+     * the class tree
+     */
+    public List<DbIdIndex> check() {
+        // Label -> DB_ID index on it
+        Map<String, DbIdIndex> label2Index = new HashMap<>();
+        try (Session session = adaptor.getConnection().session(SessionConfig.forDatabase(adaptor.getDBName()))) {
+            Result result = session.run("SHOW INDEXES");
+            while (result.hasNext()) {
+                Record rec = result.next();
+                if (!"NODE".equals(rec.get("entityType").asString()) || rec.get("labelsOrTypes").isNull() ||
+                        !rec.get("properties").asList().equals(Collections.singletonList("DB_ID"))) {
+                    continue;
+                }
+                for (Object label : rec.get("labelsOrTypes").asList()) {
+                    DbIdIndex index = new DbIdIndex((String) label, rec.get("name").asString(),
+                            "UNIQUE".equals(rec.get("uniqueness").asString()), rec.get("state").asString());
+                    // Prefer a uniqueness constraint if there are both
+                    if (index.isUnique() || !label2Index.containsKey(label)) {
+                        label2Index.put((String) label, index);
+                    }
+                }
+            }
+        }
+        List<DbIdIndex> ret = new ArrayList<>();
+        for (String className : getClassNames()) {
+            ret.add(label2Index.getOrDefault(className, new DbIdIndex(className, null, false, MISSING)));
+        }
+        return ret;
+    }
+
+    // Create DB_ID indexes on labels
+    private void create(List<String> labels) {
+        try (Session session = adaptor.getConnection().session(SessionConfig.forDatabase(adaptor.getDBName()))) {
+            for (String label : labels) {
+                infoLogger.info("Creating DB_ID index on: " + label);
+                session.run("CREATE INDEX dbId_" + label + " IF NOT EXISTS FOR (n:" + label + ") ON (n.DB_ID)").consume();
+            }
+        }
+    }
+
+    // Names of all classes in the schema: the root class first, then walking down the class tree
+    private List<String> getClassNames() {
+        Set<String> classNames = new LinkedHashSet<>();
+        Deque<SchemaClass> toVisit = new ArrayDeque<>();
+        toVisit.add(((GKSchema) adaptor.getSchema()).getRootClass());
+        while (!toVisit.isEmpty()) {
+            GKSchemaClass cls = (GKSchemaClass) toVisit.poll();
+            if (classNames.add(cls.getName())) {
+                for (Object subClass : cls.getSubClasses()) {
+                    toVisit.add((SchemaClass) subClass);
+                }
+            }
+        }
+        return new ArrayList<>(classNames);
+    }
+
+    /**
+     * The DB_ID index (or uniqueness constraint) on a label
+     */
+    public static class DbIdIndex {
+        private final String label;
+        private final String name;
+        private final boolean unique;
+        private final String state;
+
+        public DbIdIndex(String label, String name, boolean unique, String state) {
+            this.label = label;
+            this.name = name;
+            this.unique = unique;
+            this.state = state;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public boolean isUnique() {
+            return unique;
+        }
+
+        // ONLINE, POPULATING or FAILED (as reported by Neo4J), or MISSING
+        public String getState() {
+            return state;
+        }
+    }
+}
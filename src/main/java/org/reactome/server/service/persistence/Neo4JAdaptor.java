@@ -3,29 +3,20 @@ package org.reactome.server.service.persistence;
 import org.apache.commons.lang.NotImplementedException;
 import org.reactome.server.service.model.*;
 import org.reactome.server.service.schema.*;
-import org.reactome.server.service.utils.StringUtils;
+import org.reactome.server.service.utils.DomainClassIndex;
 import org.neo4j.driver.*;
 import org.neo4j.driver.Driver;
 import org.neo4j.driver.internal.value.NullValue;
 import org.neo4j.graphdb.TransactionFailureException;
 import org.neo4j.kernel.DeadlockDetectedException;
-import org.reactome.server.graph.curator.domain.model.DatabaseObject;
-import org.springframework.data.neo4j.core.schema.Relationship;
 
-import javax.tools.JavaFileObject;
-import javax.tools.StandardJavaFileManager;
-import javax.tools.StandardLocation;
-import javax.tools.ToolProvider;
 import java.io.File;
-import java.lang.annotation.Annotation;
-import java.lang.reflect.Field;
 import java.util.*;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
-import java.util.stream.StreamSupport;
 
 import java.text.SimpleDateFormat;
 import java.util.Date;
@@ -39,22 +30,54 @@ public class Neo4JAdaptor implements PersistenceAdaptor{
     private boolean useInstanceCache = true;
     private boolean useAttributeValuesCache = true;
     private Map classMap;
+    private DbIdAllocator dbIdAllocator;
+    // Parsed schema saved for the next start-up (null if not used) - see fetchSchema()
+    private SchemaSnapshot schemaSnapshot;
+    private AdaptorMetrics metrics = new AdaptorMetrics();
+    // Chooses between loading attribute values for whole classes or just for the requested instances
+    private AttributeLoadPlanner attributeLoadPlanner = new AttributeLoadPlanner(className -> {
+        try {
+            return getClassInstanceCount(className);
+        } catch (InvalidClassException e) {
+            return 0;
+        }
+    }, metrics);
     public boolean debug = false;
     // Transaction-related constants
     // The maximum amount of retries before transaction is deemed failed
     int RETRIES = 5;
     // Pause between each attempt to allow the other transaction to finish before trying again.
     int BACKOFF = 3000;
-    // Fixed-size thread pool for loading values of attributes into AttributeValueCache
-    private static ExecutorService executorService = Executors.newFixedThreadPool(700);
-
-    private static final List<String> META_CYPHER_CHARS =
-            Arrays.asList("\\[", "\\]", "\\(", "\\)", "\\?", "\\+", "\\*", "\\.");
+    // Default number of threads for loading values of attributes into AttributeValueCache
+    public static final int DEFAULT_ATTRIBUTE_LOADER_THREADS = 16;
+    // Relationship patterns around an attribute's relationship type, for (n) to its values - see getQueryOperands()
+    private static final List<String> INCOMING_OPERANDS = Collections.unmodifiableList(Arrays.asList("<-", "-", "-", "->"));
+    private static final List<String> OUTGOING_OPERANDS = Collections.unmodifiableList(Arrays.asList("-", "->"));
+    // What traverse() returns for each instance (s) reached
+    private static final String TRAVERSAL_RETURN = " RETURN s.DB_ID AS dbId, s._displayName AS displayName, s.schemaClass AS schemaClass";
+    // Bounded thread pool for loading values of attributes into AttributeValueCache - see shutdown()
+    private ThreadPoolExecutor executorService = createAttributeLoaderExecutor(DEFAULT_ATTRIBUTE_LOADER_THREADS);
+    // Changes to apply to the caches once the transactions in which they were made have been committed - see commit()
+    private final Map<Transaction, CachePatch> cachePatches = new ConcurrentHashMap<>();
+    // Class name -> number of instances of exactly that class (i.e. not counting its subclasses); loaded when first
+    // needed and kept up to date by commit() - see getInstanceCounts()
+    private volatile Map<String, Long> instanceCounts;
+    private final Object instanceCountsLock = new Object();
+    // Largest DB_ID in the database (-1 until needed); kept up to date by commit() - see fetchMaxDbId()
+    private final AtomicLong maxDbId = new AtomicLong(-1);
+    // All DB_IDs in the database (null until built by buildDbIdBitmap()); kept up to date by commit()
+    private volatile DbIdBitmap dbIdBitmap;
+    // Bitmap being built by buildDbIdBitmap(), and DB_IDs deleted while it is
+    private DbIdBitmap buildingDbIdBitmap;
+    private Set<Long> deletedWhileBuilding;
+    private final Object dbIdBitmapLock = new Object();
+    private final Object dbIdBitmapBuildLock = new Object();
 
     /**
      * This default constructor is used for subclassing.
      */
     protected Neo4JAdaptor() {
+        registerCacheMetrics();
     }
 
     /**
@@ -65,7 +88,24 @@ public class Neo4JAdaptor implements PersistenceAdaptor{
      * @param password Password for the specified user name to connect to the database
      */
     public Neo4JAdaptor(String uri, String username, String password) {
+        this(uri, username, password, null);
+    }
+
+    /**
+     * Creates a new instance of CuratorRepository
+     *
+     * @param uri     Database uri
+     * @param username User name to connect to the database
+     * @param password Password for the specified user name to connect to the database
+     * @param schemaSnapshotDir Directory in which the parsed schema is saved for the next start-up (null for none)
+     */
+    public Neo4JAdaptor(String uri, String username, String password, File schemaSnapshotDir) {
+        if (schemaSnapshotDir != null) {
+            schemaSnapshot = new SchemaSnapshot(schemaSnapshotDir);
+        }
         driver = GraphDatabase.driver(uri, AuthTokens.basic(username, password));
+        dbIdAllocator = new DbIdAllocator(driver, database, DbIdAllocator.DEFAULT_BLOCK_SIZE);
+        registerCacheMetrics();
         try {
             fetchSchema();
         } catch (Exception e) {
@@ -82,9 +122,18 @@ public class Neo4JAdaptor implements PersistenceAdaptor{
     }
 
     public Schema fetchSchema() throws Exception {
-        schema = new Neo4JSchemaParser().parseNeo4JResults(getClassNames("org.reactome.server.graph.curator.domain.model"));
-        // Retrieve from Neo4J the timestamp for the current data model and set it in schema
-        ((GKSchema) schema).setTimestamp(getSchemaTimestamp());
+        // Retrieve from Neo4J the timestamp for the current data model
+        String timestamp = getSchemaTimestamp();
+        GKSchema snapshot = schemaSnapshot != null ? schemaSnapshot.load(timestamp) : null;
+        if (snapshot != null) {
+            schema = snapshot;
+            return schema;
+        }
+        schema = new Neo4JSchemaParser().parseNeo4JResults(DomainClassIndex.getSimpleClassNames());
+        ((GKSchema) schema).setTimestamp(timestamp);
+        if (schemaSnapshot != null) {
+            schemaSnapshot.save((GKSchema) schema);
+        }
         return schema;
     }
 
@@ -99,6 +148,444 @@ public class Neo4JAdaptor implements PersistenceAdaptor{
     public void refreshCaches() {
         instanceCache.clear();
         attributeValuesCache.clear();
+        attributeLoadPlanner.clear();
+        clearCounts();
+        if (dbIdBitmap != null) {
+            dbIdBitmap = null;
+            buildDbIdBitmapInBackground();
+        }
+    }
+
+    // Forget the numbers of instances per class and the largest DB_ID - e.g. after changes made outside this adaptor
+    private void clearCounts() {
+        instanceCounts = null;
+        maxDbId.set(-1);
+    }
+
+    /**
+     * Remove from the caches the instances with DB_IDs: dbIds - e.g. after they have been edited outside this service -
+     * and re-load from the database the values of their attributes that were in AttributeValueCache, leaving the
+     * rest of the caches as they are. Dirty instances (not yet written to the database) are kept in InstanceCache.
+     * NOTE: Values of incoming (reverse) attributes of an instance are affected by changes to the instances
+     * referring to it; the DB_IDs of all instances concerned should be provided.
+     *
+     * @param dbIds DB_IDs of the instances to invalidate (including deleted instances)
+     * @throws Exception Thrown if unable to re-load attribute values from the database
+     */
+    public void invalidateInstances(Collection<Long> dbIds) throws Exception {
+        if (dbIds == null || dbIds.isEmpty()) {
+            return;
+        }
+        for (Long dbId : dbIds) {
+            removeFromInstanceCache(dbId);
+        }
+        refreshAttributeValues(dbIds);
+        attributeLoadPlanner.clear();
+        clearCounts();
+        refreshDbIdBitmap(dbIds);
+    }
+
+    // Check in the database which of dbIds still exist, and update dbIdBitmap accordingly
+    private void refreshDbIdBitmap(Collection<Long> dbIds) {
+        if (dbIdBitmap == null || dbIds.isEmpty()) {
+            return;
+        }
+        Set<Long> deleted = new HashSet<>(dbIds);
+        Set<Long> stored = new HashSet<>();
+        CypherQuery query = new CypherQuery("MATCH (n:").append(((GKSchema) schema).getRootClass().getName())
+                .append(") WHERE n.DB_ID IN ").appendParam(toLongs(dbIds)).append(" RETURN n.DB_ID");
+        try (Session session = driver.session(SessionConfig.forDatabase(this.database))) {
+            Result result = query.run(session);
+            while (result.hasNext()) {
+                Long dbId = result.next().get(0).asLong();
+                deleted.remove(dbId);
+                stored.add(dbId);
+            }
+        }
+        updateDbIdBitmap(stored, deleted);
+    }
+
+    /**
+     * Load all DB_IDs in the database into a DbIdBitmap, which then answers existing() without querying the
+     * database. DB_IDs stored or deleted by this adaptor are added to or removed from the bitmap (also while it
+     * is being built) when the transactions are committed.
+     */
+    public void buildDbIdBitmap() {
+        synchronized (dbIdBitmapBuildLock) {
+            DbIdBitmap bitmap = new DbIdBitmap();
+            synchronized (dbIdBitmapLock) {
+                buildingDbIdBitmap = bitmap;
+                deletedWhileBuilding = new HashSet<>();
+            }
+            try (Session session = driver.session(SessionConfig.forDatabase(this.database))) {
+                // The DB_IDs are streamed from the database, not collected first
+                Result result = session.run("MATCH (n:" + ((GKSchema) schema).getRootClass().getName() + ") " +
+                        "WHERE n.DB_ID IS NOT NULL RETURN n.DB_ID");
+                while (result.hasNext()) {
+                    bitmap.add(result.next().get(0).asLong());
+                }
+                synchronized (dbIdBitmapLock) {
+                    // In case the query read some of them before they were deleted
+                    for (Long dbId : deletedWhileBuilding) {
+                        bitmap.remove(dbId);
+                    }
+                    dbIdBitmap = bitmap;
+                }
+            } finally {
+                synchronized (dbIdBitmapLock) {
+                    buildingDbIdBitmap = null;
+                    deletedWhileBuilding = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * Call buildDbIdBitmap() in a thread of its own; existing() queries the database until it is done.
+     */
+    public void buildDbIdBitmapInBackground() {
+        Thread thread = new Thread(() -> {
+            try {
+                buildDbIdBitmap();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }, "dbid-bitmap-builder");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * @return the DB_IDs in the database, or null if buildDbIdBitmap() has not been called yet
+     */
+    public DbIdBitmap getDbIdBitmap() {
+        return dbIdBitmap;
+    }
+
+    private void updateDbIdBitmap(Set<Long> stored, Set<Long> deleted) {
+        synchronized (dbIdBitmapLock) {
+            for (DbIdBitmap bitmap : Arrays.asList(dbIdBitmap, buildingDbIdBitmap)) {
+                if (bitmap != null) {
+                    deleted.forEach(bitmap::remove);
+                    stored.forEach(bitmap::add);
+                }
+            }
+            if (deletedWhileBuilding != null) {
+                deletedWhileBuilding.addAll(deleted);
+                deletedWhileBuilding.removeAll(stored);
+            }
+        }
+    }
+
+    // Re-load from the database the values of instances dbIds in all attributes in attributeValuesCache
+    private void refreshAttributeValues(Collection<Long> dbIds) throws Exception {
+        Set<String> cachedClassNames = attributeValuesCache.getClassNames();
+        if (!cachedClassNames.isEmpty() && !dbIds.isEmpty()) {
+            // Find which classes (including ancestors) the instances belong to; rows of the instances no longer in
+            // the database are removed from the values of all classes
+            Map<String, Set<Long>> className2DbIds = new HashMap<>();
+            Set<Long> deleted = new HashSet<>(dbIds);
+            CypherQuery query = new CypherQuery("MATCH (n:").append(((GKSchema) schema).getRootClass().getName())
+                    .append(") WHERE n.DB_ID IN ").appendParam(toLongs(dbIds)).append(" RETURN n.DB_ID, labels(n)");
+            try (Session session = driver.session(SessionConfig.forDatabase(this.database))) {
+                Result result = query.run(session);
+                while (result.hasNext()) {
+                    Record record = result.next();
+                    Long dbId = record.get(0).asLong();
+                    deleted.remove(dbId);
+                    for (Object label : record.get(1).asList()) {
+                        className2DbIds.computeIfAbsent((String) label, k -> new HashSet<>()).add(dbId);
+                    }
+                }
+            }
+            for (String className : cachedClassNames) {
+                Set<Long> classDbIds = new HashSet<>(deleted);
+                classDbIds.addAll(className2DbIds.getOrDefault(className, Collections.emptySet()));
+                refreshAttributeValues(className, classDbIds);
+            }
+        }
+    }
+
+    /**
+     * Remove from the caches all instances of class className and of its subclasses, together with the values of
+     * their attributes, leaving the rest of the caches as they are. Dirty instances (not yet written to the database)
+     * are kept in InstanceCache.
+     *
+     * @param className name of the class to invalidate
+     * @throws Exception Thrown if className is not in the schema, or if unable to re-load attribute values from the database
+     */
+    public void invalidateClass(String className) throws Exception {
+        SchemaClass cls = schema.getClassByName(className);
+        if (cls == null) {
+            throw new InvalidClassException(className);
+        }
+        Set<String> classNames = new HashSet<>();
+        collectSubClassNames((GKSchemaClass) cls, classNames);
+        for (Map.Entry<Long, Instance> entry : instanceCache.entrySet()) {
+            if (classNames.contains(entry.getValue().getSchemClass().getName())) {
+                removeFromInstanceCache(entry.getKey());
+            }
+        }
+        for (String name : classNames) {
+            attributeValuesCache.invalidate(name);
+        }
+        // Values of attributes of the instances may also be in the cache under the ancestors of className
+        List<String> ancestorNames = new ArrayList<>();
+        for (String cachedClassName : attributeValuesCache.getClassNames()) {
+            if (cls.isa(cachedClassName)) {
+                ancestorNames.add(cachedClassName);
+            }
+        }
+        if (!ancestorNames.isEmpty()) {
+            Set<Long> dbIds = new HashSet<>();
+            try (Session session = driver.session(SessionConfig.forDatabase(this.database))) {
+                Result result = session.run("MATCH (n:" + className + ") RETURN n.DB_ID");
+                while (result.hasNext()) {
+                    dbIds.add(result.next().get(0).asLong());
+                }
+            }
+            for (String ancestorName : ancestorNames) {
+                refreshAttributeValues(ancestorName, dbIds);
+            }
+        }
+        attributeLoadPlanner.clear();
+        clearCounts();
+    }
+
+    /**
+     * Invalidate (see invalidateInstances()) all instances modified (i.e. with _timestamp) at or after timestamp
+     *
+     * @param timestamp in the format of _timestamp, e.g. 2023-01-31 12:00:00
+     * @return DB_IDs of the invalidated instances
+     * @throws Exception Thrown if unable to re-load attribute values from the database
+     */
+    public Set<Long> invalidateModifiedSince(String timestamp) throws Exception {
+        Set<Long> dbIds = new HashSet<>();
+        CypherQuery query = new CypherQuery("MATCH (n:").append(((GKSchema) schema).getRootClass().getName())
+                .append(") WHERE n.").append(ReactomeJavaConstants._timestamp).append(" >= ").appendParam(timestamp)
+                .append(" RETURN n.DB_ID");
+        try (Session session = driver.session(SessionConfig.forDatabase(this.database))) {
+            Result result = query.run(session);
+            while (result.hasNext()) {
+                dbIds.add(result.next().get(0).asLong());
+            }
+        }
+        invalidateInstances(dbIds);
+        return dbIds;
+    }
+
+    // Remove instance dbId from instanceCache, unless it is dirty
+    private void removeFromInstanceCache(Long dbId) {
+        GKInstance instance = instanceCache.get(dbId);
+        if (instance == null || !instance.isDirty()) {
+            instanceCache.remove(dbId);
+        }
+    }
+
+    private void collectSubClassNames(GKSchemaClass cls, Set<String> classNames) {
+        if (classNames.add(cls.getName())) {
+            for (Object subClass : cls.getSubClasses()) {
+                collectSubClassNames((GKSchemaClass) subClass, classNames);
+            }
+        }
+    }
+
+    // Re-load from the database the values of instances dbIds in all attributes of className in attributeValuesCache
+    private void refreshAttributeValues(String className, Set<Long> dbIds) throws Exception {
+        if (dbIds.isEmpty()) {
+            return;
+        }
+        SchemaClass cls = schema.getClassByName(className);
+        for (String attributeName : attributeValuesCache.getAttributeNames(className)) {
+            SchemaAttribute att = cls.getAttribute(attributeName);
+            attributeValuesCache.refresh(className, attributeName, dbIds, attributeValuesLoader(className, att, dbIds));
+        }
+    }
+
+    /**
+     * Commit transaction tx, then apply to the caches the changes made in it by this adaptor (store, update and
+     * delete of instances): the values of the instances concerned in AttributeValueCache are re-loaded, as are
+     * the updated instances in InstanceCache. Transactions in which instances are written should be committed
+     * with this method rather than with tx.commit() - otherwise the caches are left out of date.
+     *
+     * @param tx transaction to commit
+     */
+    public void commit(Transaction tx) {
+        // Taken out of cachePatches before tx is closed by commit - so that it cannot be swept (see
+        // sweepCachePatches()) by another thread between commit and apply
+        CachePatch patch = cachePatches.remove(tx);
+        tx.commit();
+        sweepCachePatches();
+        if (patch != null) {
+            try {
+                applyCachePatch(patch);
+            } catch (Exception e) {
+                // Better cold than stale
+                e.printStackTrace();
+                attributeValuesCache.clear();
+            }
+        }
+    }
+
+    /**
+     * Roll back transaction tx, discarding the changes to the caches that would have been applied on commit
+     *
+     * @param tx transaction to roll back
+     */
+    public void rollback(Transaction tx) {
+        cachePatches.remove(tx);
+        tx.rollback();
+        sweepCachePatches();
+    }
+
+    // Forget the changes of transactions that have been rolled back or closed other than by commit()/rollback() -
+    // those committed by commit() are removed from cachePatches before they are closed
+    private void sweepCachePatches() {
+        cachePatches.keySet().removeIf(t -> !t.isOpen());
+    }
+
+    // Return the changes to the caches to be applied when tx is committed
+    private CachePatch getCachePatch(Transaction tx) {
+        return cachePatches.computeIfAbsent(tx, k -> new CachePatch());
+    }
+
+    private void applyCachePatch(CachePatch patch) throws Exception {
+        // Values of incoming attributes of instances at the other end of relationships that may have been created or
+        // deleted - the instances are not known, so all the values are re-loaded when next needed
+        if (!patch.relationshipTypes.isEmpty()) {
+            for (String className : attributeValuesCache.getClassNames()) {
+                for (String attributeName : attributeValuesCache.getAttributeNames(className)) {
+                    if (patch.relationshipTypes.contains(attributeName) && isIncomingAttribute(className, attributeName)) {
+                        attributeValuesCache.invalidate(className, attributeName);
+                    }
+                }
+            }
+        }
+        refreshAttributeValues(patch.dbIds);
+        if (!patch.instanceCountChanges.isEmpty()) {
+            Map<String, Long> counts = instanceCounts;
+            if (counts != null) {
+                for (Map.Entry<String, Long> entry : patch.instanceCountChanges.entrySet()) {
+                    counts.merge(entry.getKey(), entry.getValue(), Long::sum);
+                }
+            }
+            attributeLoadPlanner.clear();
+        }
+        // Leave the largest DB_ID unknown if it is (it will be queried when needed)
+        long maxStoredDbId = patch.storedDbIds.stream().mapToLong(Long::longValue).max().orElse(-1);
+        maxDbId.accumulateAndGet(maxStoredDbId, (max, stored) -> max < 0 ? max : Math.max(max, stored));
+        if (patch.deletedDbIds.contains(maxDbId.get())) {
+            maxDbId.set(-1);
+        }
+        updateDbIdBitmap(patch.storedDbIds, patch.deletedDbIds);
+        // Deflate the cached copies (if any) of updated instances. This way they
+        // will be loaded with new values when they are asked for.
+        for (Map.Entry<Long, String> entry : patch.updated.entrySet()) {
+            GKInstance cachedInstance;
+            if ((cachedInstance = (GKInstance) instanceCache.get(entry.getKey())) != null) {
+                SchemaClass newCls = schema.getClassByName(entry.getValue());
+                cachedInstance.setSchemaClass(newCls);
+                cachedInstance.deflate();
+                loadInstanceAttributeValues(cachedInstance);
+                // A bug in schema: DB_ID is Long in GKInstance but Integer in schema
+                // Manual reset it
+                cachedInstance.setDBID(cachedInstance.getDBID());
+            }
+        }
+    }
+
+    private boolean isIncomingAttribute(String className, String attributeName) {
+        return ((GKSchemaClass) schema.getClassByName(className)).isIncomingAttribute(attributeName);
+    }
+
+    // Changes made to instances in a transaction, to be applied to the caches once it has been committed
+    private static class CachePatch {
+        // DB_IDs of instances whose attribute values may have changed (including deleted instances)
+        private final Set<Long> dbIds = new HashSet<>();
+        // Types of relationships that may have been created or deleted
+        private final Set<String> relationshipTypes = new HashSet<>();
+        // DB_ID -> class name of the updated instances
+        private final Map<Long, String> updated = new LinkedHashMap<>();
+        // Class name -> change in the number of its instances (by stores and deletes)
+        private final Map<String, Long> instanceCountChanges = new HashMap<>();
+        // DB_IDs of the stored instances
+        private final Set<Long> storedDbIds = new HashSet<>();
+        // DB_IDs of the deleted instances (unless stored again in the same transaction)
+        private final Set<Long> deletedDbIds = new HashSet<>();
+    }
+
+    public AdaptorMetrics getMetrics() {
+        return metrics;
+    }
+
+    public AttributeLoadPlanner getAttributeLoadPlanner() {
+        return attributeLoadPlanner;
+    }
+
+    /**
+     * @return InstanceCache - e.g. for setting its bounds
+     */
+    public InstanceCache getInstanceCache() {
+        return instanceCache;
+    }
+
+    private void registerCacheMetrics() {
+        metrics.gauge("instances.cache.size", () -> instanceCache.size());
+        metrics.gauge("instances.cache.weight", () -> instanceCache.getWeight());
+        metrics.gauge("instances.cache.pinned", () -> instanceCache.getPinnedCount());
+        metrics.gauge("instances.cache.evictions", () -> instanceCache.getEvictionCount());
+        metrics.gauge("instances.cache.soft.size", () -> instanceCache.getSoftSize());
+        metrics.gauge("instances.cache.soft.hits", () -> instanceCache.getSoftHitCount());
+        metrics.gauge("instances.cache.soft.cleared", () -> instanceCache.getSoftClearedCount());
+        metrics.gauge("dbids.bitmap.size", () -> dbIdBitmap == null ? 0 : dbIdBitmap.getCardinality());
+        metrics.gauge("dbids.bitmap.bytes", () -> dbIdBitmap == null ? 0 : dbIdBitmap.getSizeInBytes());
+    }
+
+    /**
+     * Set the number of threads used for loading values of attributes into AttributeValueCache.
+     * Loads already submitted complete on the previous threads.
+     *
+     * @param threads maximum number of concurrent loads
+     */
+    public void setAttributeLoaderThreads(int threads) {
+        ThreadPoolExecutor previous = executorService;
+        executorService = createAttributeLoaderExecutor(threads);
+        previous.shutdown();
+    }
+
+    private ThreadPoolExecutor createAttributeLoaderExecutor(int threads) {
+        AtomicInteger threadCount = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), r -> {
+            Thread thread = new Thread(r, "attribute-loader-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Don't keep idle threads around between loads
+        executor.allowCoreThreadTimeOut(true);
+        metrics.gauge("attributes.preload.queue.size", () -> executorService.getQueue().size());
+        metrics.gauge("attributes.preload.active.threads", () -> executorService.getActiveCount());
+        return executor;
+    }
+
+    /**
+     * Stop the attribute loading threads and close the connection to the database
+     * (called when the Spring context is closed).
+     */
+    public void shutdown() {
+        executorService.shutdown();
+        try {
+            if (!executorService.awaitTermination(10, TimeUnit.SECONDS)) {
+                executorService.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executorService.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        if (driver != null) {
+            driver.close();
+            driver = null;
+        }
     }
 
     public void cleanUp() throws Exception {
@@ -110,28 +597,17 @@ public class Neo4JAdaptor implements PersistenceAdaptor{
         }
     }
 
+    // The direction of an attribute's relationships is compiled into the schema (see Neo4JSchemaParser), rather than
+    // found by reflecting over the domain model class for every query
     private List<String> getQueryOperands(String className, String attributeName, QueryRequest qr) throws ClassNotFoundException {
-        List<String> ret = new ArrayList();
-        String parentClazzName = DatabaseObject.class.getPackage().getName() + "." + className;
-        Class<?> parentClazz = Class.forName(parentClazzName);
-        List<Field> fields = Neo4JSchemaParser.getAllFields(new ArrayList<>(), parentClazz);
-        Map<String, Field> fieldName2Field = new HashMap();
-        for (Field field : fields) {
-            fieldName2Field.put(field.getName(), field);
-        }
-        Field attNameField = fieldName2Field.get(attributeName);
-        Annotation annotation = null;
-        if (attNameField != null) {
-            annotation = attNameField.getAnnotation(Relationship.class);
-        }
-        if ((qr != null && qr instanceof ReverseAttributeQueryRequest) ||
-                (annotation != null && ((Relationship) annotation).direction() == Relationship.Direction.INCOMING)) {
-            ret.add("<-");
-            ret.add("-");
-        }
-        ret.add("-");
-        ret.add("->");
-        return ret;
+        GKSchemaClass cls = (GKSchemaClass) schema.getClassByName(className);
+        if (cls == null) {
+            throw new ClassNotFoundException(className);
+        }
+        if ((qr != null && qr instanceof ReverseAttributeQueryRequest) || cls.isIncomingAttribute(attributeName)) {
+            return INCOMING_OPERANDS;
+        }
+        return OUTGOING_OPERANDS;
     }
 
     /**
@@ -144,54 +620,58 @@ public class Neo4JAdaptor implements PersistenceAdaptor{
         if (useAttributeValuesCache == false || attributeValuesCache.inCacheAlready(className, att.getName())) {
             return;
         }
+        // Run query and collect results - only one thread runs it for a given className and att; any other thread
+        // asking for the same values in the meantime waits for them (see AttributeValueCache.load())
+        attributeValuesCache.load(className, att.getName(), attributeValuesLoader(className, att, null));
+    }
+
+    // Return a loader of the values of attribute att of instances of class className - all instances, or just those
+    // with DB_IDs in dbIds (if not null)
+    private AttributeValueCache.Loader attributeValuesLoader(String className, SchemaAttribute att, Collection<Long> dbIds)
+            throws Exception {
         // Prepare query
-        StringBuilder query = new StringBuilder("MATCH (n:").append(className).append(")");
+        CypherQuery query = new CypherQuery("MATCH (n:").append(className).append(")");
         if (att.getTypeAsInt() > SchemaAttribute.INSTANCE_TYPE) {
             // Primitive attribute
+            if (dbIds != null) {
+                query.append(" WHERE n.DB_ID IN ").appendParam(toLongs(dbIds));
+            }
             query.append(" RETURN DISTINCT n.DB_ID, n.").append(att.getName());
         } else {
             // Instance attribute
             String allowedClassName = ((SchemaClass) att.getAllowedClasses().iterator().next()).getName();
             List<String> operands = getQueryOperands(className, att.getName(), null);
             query.append(operands.get(0)).append("[r:").append(att.getName()).append("]")
-                    .append(operands.get(1)).append("(s:").append(allowedClassName).append(") ")
-                    .append("RETURN DISTINCT n.DB_ID, s.DB_ID, s.schemaClass");
+                    .append(operands.get(1)).append("(s:").append(allowedClassName).append(") ");
+            if (dbIds != null) {
+                query.append("WHERE n.DB_ID IN ").appendParam(toLongs(dbIds)).append(" ");
+            }
+            query.append("RETURN DISTINCT n.DB_ID, s.DB_ID, s.schemaClass");
             if (att.isMultiple()) {
                 query.append(", r.order, r.stoichiometry");
             }
         }
         // DEBUG System.out.println(query);
-        if (attributeValuesCache.inCacheAlready(className, att.getName())) {
-            // For a given className and att, a new thread to populate cache can start before another one started earlier has finished,
-            // hence we check one more time if the cache is already populated before launching a new query
-            return;
-        }
-
-        // DEBUG: System.out.println("loadAllAttributeValues - " + className + ":" + att.getName());
-        // Add placeholder to cache - in case no results are returned for className and att.getName() below
-        attributeValuesCache.addClassAttribute(className, att.getName());
-
-        // Run query, collect results and add them to attributeValuesCache
-        try (Session session = driver.session(SessionConfig.forDatabase(this.database))) {
-            Result result = session.run(query.toString());
-            if (att.getTypeAsInt() > SchemaAttribute.INSTANCE_TYPE) {
-                // Primitive attribute
-                while (result.hasNext()) {
-                    Record rec = result.next();
-                    Long dbId = rec.get(0).asLong();
-                    if (rec.get(1) != NullValue.NULL) {
-                        attributeValuesCache.addPrimitiveValue(className, att.getName(), dbId, rec.get(1));
+        return values -> {
+            // DEBUG: System.out.println("loadAllAttributeValues - " + className + ":" + att.getName());
+            try (Session session = driver.session(SessionConfig.forDatabase(this.database))) {
+                Result result = query.run(session);
+                if (att.getTypeAsInt() > SchemaAttribute.INSTANCE_TYPE) {
+                    // Primitive attribute
+                    while (result.hasNext()) {
+                        Record rec = result.next();
+                        Long dbId = rec.get(0).asLong();
+                        if (rec.get(1) != NullValue.NULL) {
+                            values.addPrimitiveValue(dbId, rec.get(1));
+                        }
                     }
-                }
-            } else {
-                // Instance attribute
-                if (!att.isMultiple()) {
+                } else if (!att.isMultiple()) {
                     // Single value Instance attribute
                     while (result.hasNext()) {
                         Record rec = result.next();
                         Long dbId = rec.get(0).asLong();
                         if (rec.get(1) != NullValue.NULL) {
-                            attributeValuesCache.addInstanceValue(className, att.getName(), dbId, rec.get(1), rec.get(2).asString());
+                            values.addInstanceValue(dbId, rec.get(1), rec.get(2).asString());
                         }
                     }
                 } else {
@@ -211,14 +691,14 @@ public class Neo4JAdaptor implements PersistenceAdaptor{
                             Long cnt = 0L;
                             // 'Explode' each value into the number of duplicates equal to stoichiometry of the relationship
                             while (cnt < stoichiometry) {
-                                attributeValuesCache.addInstanceValue(className, att.getName(), dbId, rec.get(1), rec.get(2).asString());
+                                values.addInstanceValue(dbId, rec.get(1), rec.get(2).asString());
                                 cnt++;
                             }
                         }
                     }
                 }
             }
-        }
+        };
     }
 
     /**
@@ -255,227 +735,197 @@ public class Neo4JAdaptor implements PersistenceAdaptor{
             return;
         }
 
-        // First load all the values for attributes and classes of instances - into  attributeValuesCache
-        List<Future<?>> futures = new ArrayList();
+        if (!useAttributeValuesCache) {
+            loadInstanceAttributeValuesFromDB(instances, attributes, recursive);
+            return;
+        }
+
+        // Decide per class of instances whether to load all the values for attributes of the class into
+        // attributeValuesCache, or just the values of the instances requested (see AttributeLoadPlanner)
+        Map<SchemaClass, List<GKInstance>> cls2Instances = new LinkedHashMap<>();
         for (Iterator ii = instances.iterator(); ii.hasNext(); ) {
             GKInstance ins = (GKInstance) ii.next();
-            String className = ins.getSchemClass().getName();
+            cls2Instances.computeIfAbsent(ins.getSchemClass(), k -> new ArrayList<>()).add(ins);
+        }
+        List<GKInstance> cachedInstances = new ArrayList<>();
+        List<GKInstance> targetedInstances = new ArrayList<>();
+        List<CompletableFuture<Void>> futures = new ArrayList();
+        // Names of the classes for which loading the values of (some) attributes into attributeValuesCache failed
+        Set<String> failedClassNames = ConcurrentHashMap.newKeySet();
+        for (Map.Entry<SchemaClass, List<GKInstance>> entry : cls2Instances.entrySet()) {
+            String className = entry.getKey().getName();
+            List<GKSchemaAttribute> attsToLoad = new ArrayList<>();
             for (Iterator ai = attributes.iterator(); ai.hasNext(); ) {
                 GKSchemaAttribute att = (GKSchemaAttribute) ai.next();
                 if (attributeValuesCache.inCacheAlready(className, att.getName()) || att.getName().equals("DB_ID")) {
                     continue;
                 }
-                Future<?> future = executorService.submit(() -> {
+                attsToLoad.add(att);
+            }
+            AttributeLoadPlanner.Strategy strategy =
+                    attributeLoadPlanner.plan(className, entry.getValue().size(), attsToLoad.isEmpty());
+            if (strategy == AttributeLoadPlanner.Strategy.TARGETED) {
+                targetedInstances.addAll(entry.getValue());
+                continue;
+            }
+            cachedInstances.addAll(entry.getValue());
+            // First load all the values for attributes and classes of instances - into  attributeValuesCache
+            // (one task per class and attribute)
+            for (GKSchemaAttribute att : attsToLoad) {
+                long submitted = System.nanoTime();
+                futures.add(CompletableFuture.runAsync(() -> {
+                    long started = System.nanoTime();
                     try {
                         loadAllAttributeValues(className, att);
                     } catch (Exception e) {
                         e.printStackTrace();
+                        metrics.increment("attributes.preload.failures");
+                        failedClassNames.add(className);
+                    } finally {
+                        long finished = System.nanoTime();
+                        metrics.increment("attributes.preload.tasks");
+                        metrics.add("attributes.preload.queued.time.ms", (started - submitted) / 1000000);
+                        metrics.add("attributes.preload.run.time.ms", (finished - started) / 1000000);
                     }
-                });
-                futures.add(future);
-
+                }, executorService));
             }
         }
+        if (!targetedInstances.isEmpty()) {
+            loadInstanceAttributeValuesFromDB(targetedInstances, attributes, recursive);
+        }
         // Wait for all the loadAllAttributeValues tasks to complete
-        while (futures.size() > 0 && !futures.stream().map(Future::isDone).reduce(Boolean::logicalAnd).orElse(false)) {
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+        // The values of instances of classes whose preload failed are not (all) in attributeValuesCache - load them
+        // from the database instead, rather than leave their attributes empty
+        if (!failedClassNames.isEmpty()) {
+            List<GKInstance> failedInstances = new ArrayList<>();
+            for (Iterator<GKInstance> ci = cachedInstances.iterator(); ci.hasNext(); ) {
+                GKInstance ins = ci.next();
+                if (failedClassNames.contains(ins.getSchemClass().getName())) {
+                    failedInstances.add(ins);
+                    ci.remove();
+                }
+            }
+            loadInstanceAttributeValuesFromDB(failedInstances, attributes, recursive);
         }
 
-        for (Iterator ii = instances.iterator(); ii.hasNext(); ) {
-            GKInstance ins = (GKInstance) ii.next();
+        // Now retrieve the values of each instance from attributeValuesCache
+        for (GKInstance ins : cachedInstances) {
             String instanceClassName = ins.getSchemClass().getName();
-            // Collect attributes into groups:
-            // 1. primitive attributes (into primitiveAttributesWithSingleValue) with single value
-            // 2. each primitive attribute with multiple values (into primitiveAttributesWithMultipleValues)
-            // 3. Instance-type attributes
-            List<GKSchemaAttribute> primitiveAttributesWithSingleValue = new ArrayList<>();
-            List<GKSchemaAttribute> primitiveAttributesWithMultipleValues = new ArrayList<>();
-            List<GKSchemaAttribute> instanceAttributes = new ArrayList<>();
             for (Iterator ai = attributes.iterator(); ai.hasNext(); ) {
                 GKSchemaAttribute att = (GKSchemaAttribute) ai.next();
                 if (ins.isAttributeValueLoaded(att) || !ins.getSchemClass().isValidAttribute(att)) {
                     // Don't inflate att if it has already been loaded or is not valid for this instance
                     continue;
                 }
-                if (att.getTypeAsInt() > SchemaAttribute.INSTANCE_TYPE) {
-                    if (att.isMultiple()) {
-                        primitiveAttributesWithMultipleValues.add(att);
-                    } else {
-                        primitiveAttributesWithSingleValue.add(att);
-                    }
-                } else {
-                    instanceAttributes.add(att);
-                }
+                List<AttributeValueCache.AttValCacheRecord> values =
+                        attributeValuesCache.getValues(instanceClassName, att.getName(), ins.getDBID());
+                handleAttributeValue(ins, att, values, recursive);
             }
-            // Now construct Neo4J queries per each of the attribute groups in
-            // primitiveAttributesWithSingleValue, primitiveAttributesWithMultipleValues and instanceAttributes
-            Map<String, List<GKSchemaAttribute>> cypherQueries = new HashMap<>();
-            // Primitive attributes with a single value
-            StringBuilder queryRoot = new StringBuilder("MATCH (n:").append(ins.getSchemClass().getName()).append("{DB_ID:").append(ins.getDBID()).append("})");
-            if (primitiveAttributesWithSingleValue.size() > 0) {
-                StringBuilder query = new StringBuilder(queryRoot.toString());
-                Boolean first = true;
-                for (GKSchemaAttribute a : primitiveAttributesWithSingleValue) {
-                    if (first) {
-                        query.append(" RETURN DISTINCT ");
-                        first = false;
-                    } else
-                        query.append(", ");
-                    query.append("n.").append(a.getName());
-                }
-                cypherQueries.put(query.toString(), primitiveAttributesWithSingleValue);
-            }
-            // Primitive attributes with multiple values
-            if (primitiveAttributesWithMultipleValues.size() > 0) {
-                for (GKSchemaAttribute a : primitiveAttributesWithMultipleValues) {
-                    StringBuilder query = new StringBuilder("MATCH (n:").append(ins.getSchemClass().getName()).append("{DB_ID:").append(ins.getDBID()).append("})");
-                    query.append(" RETURN DISTINCT n.").append(a.getName());
-                    cypherQueries.put(query.toString(), Collections.singletonList(a));
+        }
+    }
+
+    // Load from the database values of attributes of instances (bypassing attributeValuesCache). Instances are grouped
+    // by class and, for each class, the values of all instances are retrieved using UNWIND $dbIds in (at most) three
+    // queries: one for all primitive attributes, one for all outgoing and one for all incoming instance-type attributes.
+    private void loadInstanceAttributeValuesFromDB(Collection instances, Collection attributes, Boolean recursive)
+            throws Exception {
+        Map<SchemaClass, List<GKInstance>> cls2Instances = new LinkedHashMap<>();
+        for (Iterator ii = instances.iterator(); ii.hasNext(); ) {
+            GKInstance ins = (GKInstance) ii.next();
+            cls2Instances.computeIfAbsent(ins.getSchemClass(), k -> new ArrayList<>()).add(ins);
+        }
+        // DB_ID -> attribute name -> values
+        Map<Long, Map<String, List<AttributeValueCache.AttValCacheRecord>>> dbId2Values = new HashMap<>();
+        try (Session session = driver.session(SessionConfig.forDatabase(this.database))) {
+            for (Map.Entry<SchemaClass, List<GKInstance>> entry : cls2Instances.entrySet()) {
+                SchemaClass cls = entry.getKey();
+                List<Long> dbIds = new ArrayList<>();
+                for (GKInstance ins : entry.getValue()) {
+                    dbIds.add(ins.getDBID());
                 }
-            }
-            // Instance-type attributes
-            for (GKSchemaAttribute a : instanceAttributes) {
-                List<String> operands = getQueryOperands(instanceClassName, a.getName(), null);
-                String allowedClassName = ((SchemaClass) a.getAllowedClasses().iterator().next()).getName();
-                StringBuilder query = new StringBuilder(queryRoot.toString()).append("-[r:").append(a.getName());
-                query.append("]").append(operands.get(0)).append("(s:").append(allowedClassName).append(") ")
-                        .append("RETURN DISTINCT s.DB_ID, s.schemaClass, type(r)");
-                if (a.isMultiple()) {
-                    query.append(", r.order, r.stoichiometry");
+                List<GKSchemaAttribute> primitiveAttributes = new ArrayList<>();
+                List<String> outgoingAttributes = new ArrayList<>();
+                List<String> incomingAttributes = new ArrayList<>();
+                Map<String, GKSchemaAttribute> name2Attribute = new HashMap<>();
+                for (Iterator ai = attributes.iterator(); ai.hasNext(); ) {
+                    GKSchemaAttribute att = (GKSchemaAttribute) ai.next();
+                    if (!cls.isValidAttribute(att) || att.getName().equals(Schema.DB_ID_NAME)) continue;
+                    name2Attribute.put(att.getName(), att);
+                    if (!att.isInstanceTypeAttribute()) {
+                        primitiveAttributes.add(att);
+                    } else if (((GKSchemaClass) cls).isIncomingAttribute(att.getName())) {
+                        incomingAttributes.add(att.getName());
+                    } else {
+                        outgoingAttributes.add(att.getName());
+                    }
                 }
-                cypherQueries.put(query.toString(), Collections.singletonList(a));
-            }
-
-            // Now run cypherQueries and collect results
-            // (or, if useAttributeValuesCache is true, retrieve them from attributeValuesCache instead)
-            for (String query : cypherQueries.keySet()) {
-                List<GKSchemaAttribute> atts = cypherQueries.get(query);
-                try (Session session = driver.session(SessionConfig.forDatabase(this.database))) {
-                    Result result = null;
-                    if (!useAttributeValuesCache) {
-                        // DEBUG System.out.println(query);
-                        result = session.run(query);
+                String queryRoot = "UNWIND $dbIds AS dbId MATCH (n:" + cls.getName() + "{DB_ID:dbId})";
+                Map<String, Object> params = new HashMap<>();
+                params.put("dbIds", dbIds);
+                // Primitive attributes
+                if (!primitiveAttributes.isEmpty()) {
+                    StringBuilder query = new StringBuilder(queryRoot).append(" RETURN n.DB_ID");
+                    for (GKSchemaAttribute att : primitiveAttributes) {
+                        query.append(", n.").append(att.getName());
                     }
-                    if (atts.size() > 0) {
-                        if (!atts.get(0).isMultiple()) {
-                            // Single-value attributes
-                            if (!atts.get(0).isInstanceTypeAttribute()) {
-                                // Primitive Single-value attributes
-                                if (result != null) {
-                                    // Cypher queries were run
-                                    if (result.hasNext()) {
-                                        Record rec = result.next();
-                                        int i = 0;
-                                        for (GKSchemaAttribute gkAtt : atts) {
-                                            Value val = rec.get(i++);
-                                            if (val != NullValue.NULL) {
-                                                handleAttributeValue(ins, gkAtt,
-                                                        Collections.singletonList(new AttributeValueCache.AttValCacheRecord(val)),
-                                                        recursive);
-                                            }
-                                        }
-                                    }
-                                } else {
-                                    // Retrieve results from attributeValuesCache
-                                    for (GKSchemaAttribute gkAtt : atts) {
-                                        List<AttributeValueCache.AttValCacheRecord> values =
-                                                attributeValuesCache.getValues(instanceClassName, gkAtt.getName(), ins.getDBID());
-                                        handleAttributeValue(ins, gkAtt, values, recursive);
-                                    }
-                                }
-                            } else {
-                                // Instance-type Single-value attributes
-                                if (result != null) {
-                                    // Cypher queries were run
-                                    List<Record> results = result.list();
-                                    if (results.size() > 0) {
-                                        for (GKSchemaAttribute gkAtt : atts) {
-                                            List<Record> resultsForAttr = results.stream()
-                                                    .filter(p -> p.get(1).asString().equals(gkAtt.getName())).collect(Collectors.toList());
-                                            if (resultsForAttr.size() > 0) {
-                                                Value val = resultsForAttr.get(0).get(0);
-                                                String valueSchemaClass = resultsForAttr.get(0).get(1).asString();
-                                                if (val != NullValue.NULL) {
-                                                    handleAttributeValue(ins, gkAtt,
-                                                            Collections.singletonList(new AttributeValueCache.AttValCacheRecord(val, valueSchemaClass)), recursive);
-                                                }
-                                            }
-                                        }
-                                    }
-                                } else {
-                                    // Retrieve results from attributeValuesCache
-                                    for (GKSchemaAttribute gkAtt : atts) {
-                                        List<AttributeValueCache.AttValCacheRecord> attValCacheRecords =
-                                                attributeValuesCache.getValues(instanceClassName, gkAtt.getName(), ins.getDBID());
-                                        handleAttributeValue(ins, gkAtt, attValCacheRecords, recursive);
-                                    }
-                                }
-                            }
-                        } else {
-                            // Multiple-value attributes
-                            if (!atts.get(0).isInstanceTypeAttribute()) {
-                                // Primitive Multiple-value attributes
-                                if (result != null) {
-                                    // Cypher queries were run
-                                    List<AttributeValueCache.AttValCacheRecord> attValCacheRecords = new ArrayList();
-                                    for (GKSchemaAttribute gkAtt : atts) {
-                                        while (result.hasNext()) {
-                                            Value val = result.next().get(0);
-                                            if (val != NullValue.NULL)
-                                                attValCacheRecords.add(new AttributeValueCache.AttValCacheRecord(val));
-                                        }
-                                        handleAttributeValue(ins, gkAtt, attValCacheRecords, recursive);
-                                    }
-                                } else {
-                                    // Retrieve results from attributeValuesCache
-                                    for (GKSchemaAttribute gkAtt : atts) {
-                                        List<AttributeValueCache.AttValCacheRecord> attValCacheRecords =
-                                                attributeValuesCache.getValues(instanceClassName, gkAtt.getName(), ins.getDBID());
-                                        handleAttributeValue(ins, gkAtt, attValCacheRecords, recursive);
-                                    }
-                                }
-                            } else {
-                                // Instance-type Multiple-value attributes
-                                if (result != null) {
-                                    // Cypher queries were run
-                                    List<AttributeValueCache.AttValCacheRecord> attValCacheRecords = new ArrayList();
-                                    List<Record> results = result.list();
-                                    for (GKSchemaAttribute gkAtt : atts) {
-                                        // First sort all results by order property of the relationship
-                                        Collections.sort(results, new Comparator<Record>() {
-                                            public int compare(Record o1, Record o2) {
-                                                return o1.get(3).asInt() - o2.get(3).asInt();
-                                            }
-                                        });
-                                        // Then filter sorted results by gkAtt's name
-                                        List<Record> resultsForAttr = results.stream()
-                                                .filter(p -> p.get(2).asString().equals(gkAtt.getName())).collect(Collectors.toList());
-                                        for (Record rec : resultsForAttr) {
-                                            Value val = rec.get(0);
-                                            String valueSchemaClass = rec.get(1).asString();
-                                            Long stoichiometry = rec.get(4).asLong();
-                                            if (val != NullValue.NULL) {
-                                                Long cnt = 0L;
-                                                // 'Explode' each value into the number of duplicates equal to stoichiometry of the relationship
-                                                while (cnt < stoichiometry) {
-                                                    attValCacheRecords.add(new AttributeValueCache.AttValCacheRecord(val, valueSchemaClass));
-                                                    cnt++;
-                                                }
-                                            }
-                                        }
-                                        handleAttributeValue(ins, gkAtt, attValCacheRecords, recursive);
-                                    }
-                                } else {
-                                    // Retrieve results from attributeValuesCache
-                                    for (GKSchemaAttribute gkAtt : atts) {
-                                        List<AttributeValueCache.AttValCacheRecord> values =
-                                                attributeValuesCache.getValues(instanceClassName, gkAtt.getName(), ins.getDBID());
-                                        handleAttributeValue(ins, gkAtt, values, recursive);
-                                    }
-                                }
+                    Result result = session.run(query.toString(), params);
+                    while (result.hasNext()) {
+                        Record rec = result.next();
+                        Map<String, List<AttributeValueCache.AttValCacheRecord>> values =
+                                dbId2Values.computeIfAbsent(rec.get(0).asLong(), k -> new HashMap<>());
+                        int i = 1;
+                        for (GKSchemaAttribute att : primitiveAttributes) {
+                            Value val = rec.get(i++);
+                            if (val != NullValue.NULL) {
+                                values.put(att.getName(), Collections.singletonList(new AttributeValueCache.AttValCacheRecord(val)));
                             }
                         }
                     }
                 }
+                // Instance-type attributes
+                for (List<String> attNames : Arrays.asList(outgoingAttributes, incomingAttributes)) {
+                    if (attNames.isEmpty()) continue;
+                    params.put("types", attNames);
+                    String pattern = attNames == outgoingAttributes ? "-[r]->" : "<-[r]-";
+                    String query = queryRoot + pattern + "(s) WHERE type(r) IN $types" +
+                            " RETURN n.DB_ID, type(r), s.DB_ID, s.schemaClass, r.order, r.stoichiometry";
+                    List<Record> results = session.run(query, params).list();
+                    // Sort all results by order property of the relationship (the sort is stable, hence
+                    // results without order - i.e. values of single-value attributes - are left as they are)
+                    results.sort(Comparator.comparingLong(rec -> rec.get(4) != NullValue.NULL ? rec.get(4).asLong() : 0));
+                    for (Record rec : results) {
+                        if (rec.get(2) == NullValue.NULL) continue;
+                        GKSchemaAttribute att = name2Attribute.get(rec.get(1).asString());
+                        List<AttributeValueCache.AttValCacheRecord> values =
+                                dbId2Values.computeIfAbsent(rec.get(0).asLong(), k -> new HashMap<>())
+                                        .computeIfAbsent(att.getName(), k -> new ArrayList<>());
+                        AttributeValueCache.AttValCacheRecord value =
+                                new AttributeValueCache.AttValCacheRecord(rec.get(2), rec.get(3).asString());
+                        // 'Explode' each value of a multi-value attribute into the number of duplicates
+                        // equal to stoichiometry of the relationship
+                        long stoichiometry = att.isMultiple() && rec.get(5) != NullValue.NULL ? rec.get(5).asLong() : 1;
+                        for (long cnt = 0; cnt < stoichiometry; cnt++) {
+                            values.add(value);
+                        }
+                    }
+                }
+            }
+        }
+        // Populate the instances - outside of the session above, as this may recursively load further instances
+        for (List<GKInstance> clsInstances : cls2Instances.values()) {
+            for (GKInstance ins : clsInstances) {
+                Map<String, List<AttributeValueCache.AttValCacheRecord>> values =
+                        dbId2Values.getOrDefault(ins.getDBID(), Collections.emptyMap());
+                for (Iterator ai = attributes.iterator(); ai.hasNext(); ) {
+                    GKSchemaAttribute att = (GKSchemaAttribute) ai.next();
+                    if (ins.isAttributeValueLoaded(att) || !ins.getSchemClass().isValidAttribute(att)
+                            || att.getName().equals(Schema.DB_ID_NAME)) {
+                        // Don't inflate att if it has already been loaded or is not valid for this instance
+                        continue;
+                    }
+                    handleAttributeValue(ins, att, values.get(att.getName()), recursive);
+                }
             }
         }
     }
@@ -599,6 +1049,94 @@ public class Neo4JAdaptor implements PersistenceAdaptor{
         loadInstanceAttributeValues(Collections.singletonList(instance), Collections.singletonList(attribute), recursive);
     }
 
+    /**
+     * Load values of instance-type attributes of instances of (possibly) different classes, e.g. of all the instances
+     * at the same depth of a breadth-first traversal - see FrontierTraversal. The values of all instances are retrieved
+     * using UNWIND $dbIds in (at most) two queries: one for all outgoing and one for all incoming attributes. Values are
+     * set as (uninflated) instances of their own classes; attributes without values are set to an empty list, so that
+     * they are not loaded again when read. Attributes that are not instance-type, not valid for the class of an
+     * instance, or already loaded into it are skipped.
+     *
+     * @param instance2AttNames GKInstance -> names of the attributes to load for it
+     * @throws Exception
+     */
+    public void loadTraversalAttributeValues(Map<GKInstance, ? extends Collection<String>> instance2AttNames)
+            throws Exception {
+        // GKInstance -> attributes to load for it; DB_ID -> (one of the) instance(s) with that DB_ID
+        Map<GKInstance, List<GKSchemaAttribute>> instance2Atts = new LinkedHashMap<>();
+        Map<Long, GKInstance> dbId2Instance = new HashMap<>();
+        Set<Long> outgoingDbIds = new LinkedHashSet<>();
+        Set<Long> incomingDbIds = new LinkedHashSet<>();
+        Set<String> outgoingTypes = new HashSet<>();
+        Set<String> incomingTypes = new HashSet<>();
+        for (Map.Entry<GKInstance, ? extends Collection<String>> entry : instance2AttNames.entrySet()) {
+            GKInstance ins = entry.getKey();
+            GKSchemaClass cls = (GKSchemaClass) ins.getSchemClass();
+            if (ins.getDBID() == null || ins.isInflated() || cls == null) continue;
+            List<GKSchemaAttribute> atts = new ArrayList<>();
+            for (String attName : entry.getValue()) {
+                GKSchemaAttribute att = (GKSchemaAttribute) cls.getAttributeNoCheck(attName);
+                if (att == null || !att.isInstanceTypeAttribute() || ins.isAttributeValueLoaded(att)) continue;
+                atts.add(att);
+                if (cls.isIncomingAttribute(attName)) {
+                    incomingDbIds.add(ins.getDBID());
+                    incomingTypes.add(attName);
+                } else {
+                    outgoingDbIds.add(ins.getDBID());
+                    outgoingTypes.add(attName);
+                }
+            }
+            if (!atts.isEmpty()) {
+                instance2Atts.put(ins, atts);
+                dbId2Instance.putIfAbsent(ins.getDBID(), ins);
+            }
+        }
+        if (instance2Atts.isEmpty()) {
+            return;
+        }
+        // DB_ID -> attribute name -> values
+        Map<Long, Map<String, List<GKInstance>>> dbId2Values = new HashMap<>();
+        String rootClassName = ((GKSchema) getSchema()).getRootClass().getName();
+        try (Session session = driver.session(SessionConfig.forDatabase(this.database))) {
+            for (boolean incoming : new boolean[]{false, true}) {
+                Set<Long> dbIds = incoming ? incomingDbIds : outgoingDbIds;
+                if (dbIds.isEmpty()) continue;
+                Map<String, Object> params = new HashMap<>();
+                params.put("dbIds", new ArrayList<>(dbIds));
+                params.put("types", new ArrayList<>(incoming ? incomingTypes : outgoingTypes));
+                String query = "UNWIND $dbIds AS dbId MATCH (n:" + rootClassName + "{DB_ID:dbId})" +
+                        (incoming ? "<-[r]-" : "-[r]->") + "(s) WHERE type(r) IN $types" +
+                        " RETURN n.DB_ID, type(r), s.DB_ID, s.schemaClass, r.order, r.stoichiometry";
+                List<Record> results = session.run(query, params).list();
+                // Sort all results by order property of the relationship - see loadInstanceAttributeValuesFromDB()
+                results.sort(Comparator.comparingLong(rec -> rec.get(4) != NullValue.NULL ? rec.get(4).asLong() : 0));
+                for (Record rec : results) {
+                    if (rec.get(2) == NullValue.NULL) continue;
+                    Long dbId = rec.get(0).asLong();
+                    String attName = rec.get(1).asString();
+                    GKSchemaClass cls = (GKSchemaClass) dbId2Instance.get(dbId).getSchemClass();
+                    GKSchemaAttribute att = (GKSchemaAttribute) cls.getAttributeNoCheck(attName);
+                    // Relationships of a type which is an attribute in the other direction (or not one at all) for cls
+                    if (att == null || cls.isIncomingAttribute(attName) != incoming) continue;
+                    GKInstance value = (GKInstance) getInstance(rec.get(3).asString(), rec.get(2).asLong());
+                    List<GKInstance> values = dbId2Values.computeIfAbsent(dbId, k -> new HashMap<>())
+                            .computeIfAbsent(attName, k -> new ArrayList<>());
+                    long stoichiometry = att.isMultiple() && rec.get(5) != NullValue.NULL ? rec.get(5).asLong() : 1;
+                    for (long cnt = 0; cnt < stoichiometry; cnt++) {
+                        values.add(value);
+                    }
+                }
+            }
+        }
+        for (Map.Entry<GKInstance, List<GKSchemaAttribute>> entry : instance2Atts.entrySet()) {
+            GKInstance ins = entry.getKey();
+            Map<String, List<GKInstance>> values = dbId2Values.getOrDefault(ins.getDBID(), Collections.emptyMap());
+            for (GKSchemaAttribute att : entry.getValue()) {
+                ins.setAttributeValueNoCheck(att, new ArrayList<>(values.getOrDefault(att.getName(), Collections.emptyList())));
+            }
+        }
+    }
+
     public void loadInstanceAttributeValues(Collection instances, String[] attNames) throws Exception {
         GKSchema s = (GKSchema) getSchema();
         Set attributes = new HashSet();
@@ -683,27 +1221,86 @@ public class Neo4JAdaptor implements PersistenceAdaptor{
                 throw new Exception(errMsg);
             }
         }
-        return collectionOfInstancesOnly;
-    }
-
-    // Throw Exception unless qr's operator is "IS NOT NULL"
-    private Boolean isNotNullQuery(QueryRequest qr) throws Exception {
-        if (!qr.getOperator().equals("IS NOT NULL")) {
-            throw new Exception("Illegal sub-query - only 'IS NOT NULL' sub-queries are implemented");
-        }
-        return true;
+        return collectionOfInstancesOnly;
+    }
+
+    // Throw Exception unless qr's operator is "IS NOT NULL"
+    private Boolean isNotNullQuery(QueryRequest qr) throws Exception {
+        if (!qr.getOperator().equals("IS NOT NULL")) {
+            throw new Exception("Illegal sub-query - only 'IS NOT NULL' sub-queries are implemented");
+        }
+        return true;
+    }
+
+    /**
+     *
+     * @param aqrList
+     * @return Collection of instances matching a list of QueryRequest's.
+     * A Set is used because the results of different QueryRequest's may overlap.
+     * @throws Exception if the values retrieved from the database are not of the type expected for a given QueryRequest's attribute
+     */
+    public Set fetchInstance(List<QueryRequest> aqrList) throws Exception {
+        CypherQuery query = buildFetchQuery(aqrList, null);
+        query.append(" RETURN n.DB_ID, n._displayName, n.schemaClass");
+        return (Set) fetchInstances(query, new HashSet<>());
+    }
+
+    /**
+     * Fetch one page of the instances matching a list of QueryRequest's. Instances are ordered by DB_ID, so the
+     * next page is fetched by passing the DB_ID of the last instance of this one as afterDbId; only the instances
+     * of the requested page are fetched from the database.
+     *
+     * @param aqrList   QueryRequest's the instances must match
+     * @param afterDbId only instances with a larger DB_ID are returned; null for the first page
+     * @param limit     maximum number of instances to return
+     * @return at most limit instances matching aqrList, in ascending order of DB_ID
+     * @throws Exception if the values retrieved from the database are not of the type expected for a given QueryRequest's attribute
+     */
+    public List<Instance> fetchInstance(List<QueryRequest> aqrList, Long afterDbId, int limit) throws Exception {
+        CypherQuery query = buildFetchQuery(aqrList, afterDbId);
+        query.append(" WITH DISTINCT n RETURN n.DB_ID, n._displayName, n.schemaClass ORDER BY n.DB_ID LIMIT ")
+                .appendParam((long) limit);
+        return fetchInstances(query, new ArrayList<>());
+    }
+
+    /**
+     * @param aqrList QueryRequest's the instances must match
+     * @return the number of instances matching aqrList
+     * @throws Exception if the values retrieved from the database are not of the type expected for a given QueryRequest's attribute
+     */
+    public long countInstances(List<QueryRequest> aqrList) throws Exception {
+        CypherQuery query = buildFetchQuery(aqrList, null);
+        query.append(" RETURN count(DISTINCT n)");
+        try (Session session = driver.session(SessionConfig.forDatabase(getDBName()))) {
+            return query.run(session).single().get(0).asLong();
+        }
+    }
+
+    // Run query, which returns DB_ID, _displayName and schemaClass of instances, and add the instances to instances
+    private <T extends Collection<Instance>> T fetchInstances(CypherQuery query, T instances) throws Exception {
+        SchemaAttribute _displayName = ((GKSchema) schema).getRootClass().getAttribute("_displayName");
+        // DEBUG System.out.println(query);
+        try (Session session = driver.session(SessionConfig.forDatabase(getDBName()))) {
+            Result result = query.run(session);
+            while (result.hasNext()) {
+                Record res = result.next();
+                Long dbId = res.get(0) != Values.NULL ? res.get(0).asLong() : null;
+                String displayName = res.get(1) != Values.NULL ? res.get(1).asString() : null;
+                String clsName = res.get(2) != Values.NULL ? res.get(2).asString() : null;
+                if (dbId != null) {
+                    Instance instance = getInstance(clsName, dbId);
+                    instance.setAttributeValue(_displayName, displayName);
+                    instances.add(instance);
+                }
+            }
+            return instances;
+        }
     }
 
-    /**
-     *
-     * @param aqrList
-     * @return Collection of instances matching a list of QueryRequest's.
-     * A Set is used because the results of different QueryRequest's may overlap.
-     * @throws Exception if the values retrieved from the database are not of the type expected for a given QueryRequest's attribute
-     */
-    public Set fetchInstance(List<QueryRequest> aqrList) throws Exception {
-        SchemaAttribute _displayName = ((GKSchema) schema).getRootClass().getAttribute("_displayName");
-        StringBuilder query = new StringBuilder();
+    // Return the MATCH and WHERE clauses selecting (as n) the instances matching aqrList and, unless afterDbId is
+    // null, with a DB_ID larger than afterDbId
+    private CypherQuery buildFetchQuery(List<QueryRequest> aqrList, Long afterDbId) throws Exception {
+        CypherQuery query = new CypherQuery();
         StringBuilder whereClause = new StringBuilder();
         String whereClauseKeyWord = " WHERE";
         Integer pos = 1;
@@ -713,8 +1310,9 @@ public class Neo4JAdaptor implements PersistenceAdaptor{
             SchemaAttribute att = aqr.getAttribute();
             String attName = att.getName();
             Object value = aqr.getValue();
-            if (Arrays.asList("LIKE", "NOT LIKE").contains(aqr.getOperator())) {
-                value = escapeMetaCypherCharactersForRegexQuery((String) value);
+            if (Arrays.asList("LIKE", "NOT LIKE").contains(aqr.getOperator()) && !"".equals(value)) {
+                // LIKE is matched as a regex on the literal (quoted) value, hence regex meta-characters need no escaping
+                value = ".*" + Pattern.quote((String) value) + ".*";
             }
 
             if (att.isInstanceTypeAttribute()) {
@@ -754,7 +1352,7 @@ public class Neo4JAdaptor implements PersistenceAdaptor{
                         }
                     }
                     if (collectionOfInstancesOnly) {
-                        whereClause.append(whereClauseKeyWord).append(" s").append(pos).append(".DB_ID IN (").append(dbIds).append(")");
+                        whereClause.append(whereClauseKeyWord).append(" s").append(pos).append(".DB_ID IN ").append(query.param(dbIds));
                     }
                 } else {
                     // Single value - either 1. null ("IS NULL" query) or Instance,
@@ -763,7 +1361,7 @@ public class Neo4JAdaptor implements PersistenceAdaptor{
                         if (!aqr.getOperator().equals("IS NOT NULL")) {
                             if (!aqr.getOperator().equals("IS NULL")) {
                                 if (value instanceof org.reactome.server.service.model.Instance)
-                                    whereClause.append(whereClauseKeyWord).append(" s").append(pos).append(".DB_ID = ").append(((GKInstance) value).getDBID());
+                                    whereClause.append(whereClauseKeyWord).append(" s").append(pos).append(".DB_ID = ").append(query.param(((GKInstance) value).getDBID()));
                                 else
                                     // value == null || value.equals("") - we make it the same as IS NULL
                                     whereClause.append(whereClauseKeyWord).append(" NOT ").append("(n)")
@@ -796,13 +1394,7 @@ public class Neo4JAdaptor implements PersistenceAdaptor{
                             operator = " =~ ";
                         }
                         whereClause.append(whereClauseKeyWord).append(" s").append(pos).append("._displayName");
-                        whereClause.append(operator).append("\"");
-                        if (Arrays.asList("LIKE", "NOT LIKE").contains(aqr.getOperator()) && !value.equals("")) {
-                            whereClause.append(".*").append(value).append(".*");
-                        } else {
-                            whereClause.append(value);
-                        }
-                        whereClause.append("\"");
+                        whereClause.append(operator).append(query.param(value));
                     }
                 }
             } else {
@@ -854,7 +1446,7 @@ public class Neo4JAdaptor implements PersistenceAdaptor{
                                     throw new Exception("Please provide a Boolean value for attribute: " + attName);
                                 }
                             } else if (att.getTypeAsInt() == SchemaAttribute.STRING_TYPE) {
-                                vals.add("\"" + val + "\"");
+                                vals.add(val);
                             }
                         }
                         if (val instanceof Integer) {
@@ -870,7 +1462,7 @@ public class Neo4JAdaptor implements PersistenceAdaptor{
                     if (att.isMultiple()) {
                         whereClause.append(" WHERE x");
                     }
-                    whereClause.append(" IN (").append(vals).append(")");
+                    whereClause.append(" IN ").append(query.param(vals));
                     if (att.isMultiple()) {
                         whereClause.append(")");
                     }
@@ -896,51 +1488,37 @@ public class Neo4JAdaptor implements PersistenceAdaptor{
                             if (Arrays.asList("LIKE", "NOT LIKE", "REGEXP").contains(aqr.getOperator()) &&
                                     att.getTypeAsInt() != SchemaAttribute.STRING_TYPE) {
                                 // E.g. LIKE query for DB_ID
-                                if (Arrays.asList("LIKE", "NOT LIKE").contains(aqr.getOperator()))
-                                    whereClause.append(operator).append("\"").append(".*").append(value).append(".*").append("\"");
-                                else
-                                    whereClause.append(operator).append("\"").append(value).append("\"");
+                                whereClause.append(operator).append(query.param(value));
                             } else if (att.getTypeAsInt() == SchemaAttribute.LONG_TYPE) {
                                 try {
-                                    whereClause.append(operator).append(Long.parseLong((String) value));
+                                    whereClause.append(operator).append(query.param(Long.parseLong((String) value)));
                                 } catch (NumberFormatException nfe) {
                                     throw new Exception("Please provide a number of type Long for attribute: " + attName);
                                 }
                             } else if (att.getTypeAsInt() == SchemaAttribute.INTEGER_TYPE) {
                                 try {
-                                    whereClause.append(operator).append(Integer.parseInt((String) value));
+                                    whereClause.append(operator).append(query.param(Integer.parseInt((String) value)));
                                 } catch (NumberFormatException nfe) {
                                     throw new Exception("Please provide a number of type Integer for attribute: " + attName);
                                 }
                             } else if (att.getTypeAsInt() == SchemaAttribute.FLOAT_TYPE) {
                                 try {
-                                    whereClause.append(operator).append(Float.parseFloat((String) value));
+                                    whereClause.append(operator).append(query.param(Float.parseFloat((String) value)));
                                 } catch (NumberFormatException nfe) {
                                     throw new Exception("Please provide a number of type Float for attribute: " + attName);
                                 }
                             } else if (att.getTypeAsInt() == SchemaAttribute.BOOLEAN_TYPE) {
                                 try {
-                                    whereClause.append(operator).append(Boolean.parseBoolean((String) value));
+                                    whereClause.append(operator).append(query.param(Boolean.parseBoolean((String) value)));
                                 } catch (NumberFormatException nfe) {
                                     throw new Exception("Please provide a Boolean value for attribute: " + attName);
                                 }
                             } else if (att.getTypeAsInt() == SchemaAttribute.STRING_TYPE) {
-                                whereClause.append(operator).append("\"");
-                                if (Arrays.asList("LIKE", "NOT LIKE").contains(aqr.getOperator()) && !value.equals("")) {
-                                    whereClause.append(".*").append(value).append(".*");
-                                } else {
-                                    whereClause.append(value);
-                                }
-                                whereClause.append("\"");
+                                whereClause.append(operator).append(query.param(value));
                             }
-                        } else if (value instanceof Integer) {
-                            whereClause.append(operator).append(((Integer) value).intValue());
-                        } else if (value instanceof Float) {
-                            whereClause.append(operator).append(((Float) value).floatValue());
-                        } else if (value instanceof Boolean) {
-                            whereClause.append(operator).append(((Boolean) value).booleanValue());
-                        } else if (value instanceof Long) {
-                            whereClause.append(operator).append(((Long) value).longValue());
+                        } else if (value instanceof Integer || value instanceof Float ||
+                                value instanceof Boolean || value instanceof Long) {
+                            whereClause.append(operator).append(query.param(value));
                         }
                         if (Arrays.asList("NOT LIKE", "!=").contains(aqr.getOperator())) {
                             whereClause.append(")");
@@ -957,24 +1535,11 @@ public class Neo4JAdaptor implements PersistenceAdaptor{
                 whereClauseKeyWord = " AND";
             pos++;
         }
-        query.append(" ").append(whereClause).append(" RETURN n.DB_ID, n._displayName, n.schemaClass");
-        Set instances = new HashSet();
-        // DEBUG System.out.println(query);
-        try (Session session = driver.session(SessionConfig.forDatabase(getDBName()))) {
-            Result result = session.run(query.toString());
-            while (result.hasNext()) {
-                Record res = result.next();
-                Long dbId = res.get(0) != Values.NULL ? res.get(0).asLong() : null;
-                String displayName = res.get(1) != Values.NULL ? res.get(1).asString() : null;
-                String clsName = res.get(2) != Values.NULL ? res.get(2).asString() : null;
-                if (dbId != null) {
-                    Instance instance = getInstance(clsName, dbId);
-                    instance.setAttributeValue(_displayName, displayName);
-                    instances.add(instance);
-                }
-            }
-            return instances;
+        if (afterDbId != null) {
+            whereClause.append(whereClauseKeyWord).append(" n.DB_ID > ").append(query.param(afterDbId));
         }
+        query.append(" ").append(whereClause);
+        return query;
     }
 
     /**
@@ -1039,6 +1604,23 @@ public class Neo4JAdaptor implements PersistenceAdaptor{
         SchemaAttribute attribute = instance.getSchemClass().getAttribute(attributeName);
         deleteFromDBInstanceAttributeValue(attribute, instance, tx);
         storeAttribute(attribute, instance, tx, true);
+        updateTimestamp(instance, tx);
+        written(instance, tx);
+    }
+
+    // Mark instance as written to the database in transaction tx: it is no longer dirty, but it stays in InstanceCache
+    // (if it is there) at least until tx is closed. Its values in attributeValuesCache are re-loaded once tx is committed.
+    private void written(GKInstance instance, Transaction tx) {
+        instanceCache.pin(instance.getDBID(), tx::isOpen);
+        instance.setIsDirty(false);
+        CachePatch patch = getCachePatch(tx);
+        patch.dbIds.add(instance.getDBID());
+        for (Iterator ai = instance.getSchemClass().getAttributes().iterator(); ai.hasNext(); ) {
+            SchemaAttribute att = (SchemaAttribute) ai.next();
+            if (att.isInstanceTypeAttribute()) {
+                patch.relationshipTypes.add(att.getName());
+            }
+        }
     }
 
     /**
@@ -1054,11 +1636,14 @@ public class Neo4JAdaptor implements PersistenceAdaptor{
         try (Session session = driver.session(SessionConfig.forDatabase(getDBName()))) {
             Transaction tx = session.beginTransaction();
             updateInstanceAttribute(instance, attributeName, tx);
-            tx.commit();
+            commit(tx);
         }
     }
 
     /**
+     * Update in the database the node corresponding to instance. Only attribute values that differ from those stored
+     * are written; the node is re-created (and its referrers re-linked to it) only if its class has changed.
+     *
      * @param instance GKInstance to update in the database
      * @throws Exception Thrown if the instance has no DB_ID, there is a problem updating the instance or its
      *                   referrers in the database, or there is a problem loading attribute values if the instance is in the instance
@@ -1069,27 +1654,178 @@ public class Neo4JAdaptor implements PersistenceAdaptor{
         if (dbID == null) {
             throw (new DBIDNotSetException(instance));
         }
-        // Find all referrers in Neo4J and then update the relevant attribute to point to (the new) instance.
+        SchemaClass cls = schema.getClassByName(instance.getSchemClass().getName());
+        Record stored = fetchStoredInstance(dbID, tx);
+        if (stored != null && cls.getName().equals(stored.get(0).asString())) {
+            // Write to the database only what has changed; the node and relationships pointing to it stay as they are
+            updateChangedAttributes(instance, cls, stored.get(1).asMap(), stored.get(2).asList(), tx);
+        } else {
+            // The class of the instance has changed (or it is not in the database) - re-create the node
+            rewriteInstance(instance, stored == null ? null : schema.getClassByName(stored.get(0).asString()), tx);
+        }
+        written(instance, tx);
+        // The cached copy (if any) of the updated instance is re-loaded once tx is committed
+        getCachePatch(tx).updated.put(dbID, cls.getName());
+    }
+
+    // Retrieve from the database: schemaClass, properties and outgoing relationships
+    // ({id, type, dbId, stoichiometry, order}) of the node with DB_ID: dbID; null if there is no such node
+    private Record fetchStoredInstance(Long dbID, Transaction tx) {
+        CypherQuery query = new CypherQuery("MATCH (n:").append(((GKSchema) schema).getRootClass().getName())
+                .append("{DB_ID:").appendParam(dbID).append("})")
+                .append(" RETURN n.schemaClass, properties(n),")
+                .append(" [(n)-[r]->(m) | {id:id(r), type:type(r), dbId:m.DB_ID, stoichiometry:r.stoichiometry, order:r.order}]");
+        Result result = query.run(tx);
+        return result.hasNext() ? result.next() : null;
+    }
+
+    // Replace in the database the node (of class storedCls, if not null) corresponding to instance
+    // with a newly stored one, and re-link to it all its referrers
+    private void rewriteInstance(GKInstance instance, SchemaClass storedCls, Transaction tx) throws Exception {
+        // Find all referrers in Neo4J and then re-create their relationships to (the new) instance.
         // N.B. Need to find referrers before removing instance from Neo4J as when the instance is deleted,
         // all relationships to that instance will be lost.
-        List<List<Object>> referrers = findReferrers(instance);
-        deleteInstanceFromNeo4J(instance.getSchemClass(), dbID, tx);
+        List<Map<String, Object>> referrers = findReferrers(instance, tx);
+        if (storedCls != null) {
+            deleteInstanceFromNeo4J(storedCls, instance.getDBID(), tx);
+        }
         // Force-store instance before re-creating all relationships to it
         storeInstance(instance, true, tx, true);
         updateReferrers(referrers, instance, tx);
-        // Deflate the cached copy (if any) of the updated instance. This way it
-        // will be loaded with new values when they are asked for.
-        GKInstance cachedInstance;
-        if ((cachedInstance = (GKInstance) instanceCache.get(dbID)) != null) {
-            SchemaClass newCls = schema.getClassByName(instance.getSchemClass().getName());
-            cachedInstance.setSchemaClass(newCls);
-            //cachedInstance.setSchemaClass(instance.getSchemClass());
-            cachedInstance.deflate();
-            loadInstanceAttributeValues(cachedInstance);
-            // A bug in schema: DB_ID is Long in GKInstance but Integer in schema
-            // Manual reset it
-            cachedInstance.setDBID(cachedInstance.getDBID());
+    }
+
+    // Compare the attribute values of instance with the properties and outgoing relationships stored in the database
+    // and write to the database just the differences: properties are SET or REMOVEd, relationships created, deleted
+    // or have their stoichiometry/order updated. Returns false if there were no differences (nothing was written).
+    private boolean updateChangedAttributes(GKInstance instance, SchemaClass cls, Map<String, Object> storedProperties,
+                                            List<Object> storedRels, Transaction tx) throws Exception {
+        Map<String, Object> setProperties = new HashMap<>();
+        List<String> removeProperties = new ArrayList<>();
+        List<Long> deleteRels = new ArrayList<>();
+        List<Map<String, Object>> updateRels = new ArrayList<>();
+        List<Map<String, Object>> createRels = new ArrayList<>();
+        Map<String, List<Map<String, Object>>> type2StoredRels = new HashMap<>();
+        for (Object o : storedRels) {
+            Map<String, Object> rel = (Map<String, Object>) o;
+            type2StoredRels.computeIfAbsent((String) rel.get("type"), k -> new ArrayList<>()).add(rel);
+        }
+        for (Iterator ai = cls.getAttributes().iterator(); ai.hasNext(); ) {
+            GKSchemaAttribute att = (GKSchemaAttribute) ai.next();
+            String attName = att.getName();
+            if (attName.equals(Schema.DB_ID_NAME)) continue;
+            if (att.isInstanceTypeAttribute()) {
+                // Values of incoming attributes are relationships owned by the other end - these are not changed here
+                if (((GKSchemaClass) att.getOrigin()).isIncomingAttribute(attName)) continue;
+                List<Map<String, Object>> rels = getRelationshipRows(instance.getAttributeValuesList(attName), tx, true);
+                diffRelationships(attName, rels, type2StoredRels.getOrDefault(attName, Collections.emptyList()),
+                        deleteRels, updateRels, createRels);
+            } else {
+                List attVals = instance.getAttributeValuesList(attName);
+                Object value = attVals.isEmpty() ? null : toStoredValue(getPrimitiveValue(att, attVals));
+                if (!Objects.equals(value, storedProperties.get(attName))) {
+                    if (value == null)
+                        removeProperties.add(attName);
+                    else
+                        setProperties.put(attName, value);
+                }
+            }
+        }
+        if (instance.getDisplayName() != null && !instance.getDisplayName().equals(storedProperties.get("displayName"))) {
+            setProperties.put("displayName", instance.getDisplayName());
+        }
+        if (setProperties.isEmpty() && removeProperties.isEmpty() &&
+                deleteRels.isEmpty() && updateRels.isEmpty() && createRels.isEmpty()) {
+            return false;
+        }
+        // Set _timestamp to current time - before storing in DB
+        String currentTimeStamp = getCurrentTimestamp();
+        instance.setAttributeValue(ReactomeJavaConstants._timestamp, currentTimeStamp);
+        setProperties.put(ReactomeJavaConstants._timestamp, currentTimeStamp);
+
+        String rootClassName = ((GKSchema) schema).getRootClass().getName();
+        CypherQuery stmt = new CypherQuery("MATCH (n:").append(rootClassName)
+                .append("{DB_ID:").appendParam(instance.getDBID()).append("}) SET n += ").appendParam(setProperties);
+        for (String attName : removeProperties) {
+            stmt.append(" REMOVE n.").append(attName);
+        }
+        executeTransaction(stmt, tx);
+        if (!deleteRels.isEmpty()) {
+            stmt = new CypherQuery("MATCH ()-[r]->() WHERE id(r) IN ").appendParam(deleteRels).append(" DELETE r");
+            executeTransaction(stmt, tx);
+        }
+        if (!updateRels.isEmpty()) {
+            stmt = new CypherQuery("UNWIND ").appendParam(updateRels).append(" AS u")
+                    .append(" MATCH ()-[r]->() WHERE id(r) = u.id")
+                    .append(" SET r.stoichiometry = u.stoichiometry, r.order = u.order");
+            executeTransaction(stmt, tx);
+        }
+        if (!createRels.isEmpty()) {
+            stmt = new CypherQuery("MATCH (n:").append(rootClassName)
+                    .append("{DB_ID:").appendParam(instance.getDBID()).append("})")
+                    .append(" UNWIND ").appendParam(createRels).append(" AS r")
+                    .append(" MATCH (p:").append(rootClassName).append("{DB_ID:r.dbId})")
+                    .append(" CALL apoc.create.relationship(n, r.type, {stoichiometry:r.stoichiometry, order:r.order}, p)")
+                    .append(" YIELD rel RETURN count(rel)");
+            executeTransaction(stmt, tx);
+        }
+        return true;
+    }
+
+    // Compare the relationship rows (see getRelationshipRows) of attribute attName with the relationships of that type
+    // stored in the database, and add the differences to deleteRels (ids of stored relationships), updateRels
+    // ({id, stoichiometry, order}) and createRels ({type, dbId, stoichiometry, order})
+    static void diffRelationships(String attName, List<Map<String, Object>> rels, List<Map<String, Object>> storedRels,
+                                   List<Long> deleteRels, List<Map<String, Object>> updateRels,
+                                   List<Map<String, Object>> createRels) {
+        Map<Long, Map<String, Object>> dbId2StoredRel = new HashMap<>();
+        boolean duplicates = false;
+        for (Map<String, Object> storedRel : storedRels) {
+            duplicates |= dbId2StoredRel.put((Long) storedRel.get("dbId"), storedRel) != null;
+        }
+        if (duplicates) {
+            // More than one relationship to the same value - replace them all rather than try to match them up
+            dbId2StoredRel.clear();
+            for (Map<String, Object> storedRel : storedRels) {
+                deleteRels.add((Long) storedRel.get("id"));
+            }
+        }
+        for (Map<String, Object> rel : rels) {
+            Map<String, Object> storedRel = dbId2StoredRel.remove(rel.get("dbId"));
+            if (storedRel == null) {
+                Map<String, Object> createRel = new HashMap<>(rel);
+                createRel.put("type", attName);
+                createRels.add(createRel);
+            } else if (!sameNumber(rel.get("stoichiometry"), storedRel.get("stoichiometry")) ||
+                    !sameNumber(rel.get("order"), storedRel.get("order"))) {
+                Map<String, Object> updateRel = new HashMap<>(rel);
+                updateRel.put("id", storedRel.get("id"));
+                updateRels.add(updateRel);
+            }
+        }
+        for (Map<String, Object> storedRel : dbId2StoredRel.values()) {
+            deleteRels.add((Long) storedRel.get("id"));
+        }
+    }
+
+    private static boolean sameNumber(Object n1, Object n2) {
+        return n1 instanceof Number && n2 instanceof Number && ((Number) n1).longValue() == ((Number) n2).longValue();
+    }
+
+    // Convert value into the type in which Neo4J returns it once stored (i.e. integers as Long, floats as Double),
+    // so that it can be compared with the stored value
+    private static Object toStoredValue(Object value) {
+        if (value instanceof Integer || value instanceof Short) {
+            return ((Number) value).longValue();
+        } else if (value instanceof Float) {
+            return ((Float) value).doubleValue();
+        } else if (value instanceof List) {
+            List<Object> ret = new ArrayList<>();
+            for (Object o : (List) value) {
+                ret.add(toStoredValue(o));
+            }
+            return ret;
         }
+        return value;
     }
 
     /**
@@ -1105,51 +1841,47 @@ public class Neo4JAdaptor implements PersistenceAdaptor{
         try (Session session = driver.session(SessionConfig.forDatabase(getDBName()))) {
             Transaction tx = session.beginTransaction();
             updateInstance(instance, tx);
-            tx.commit();
+            commit(tx);
         }
     }
 
-    // Find in database all referrer instances of instance passed as argument
+    // Find in database all relationships pointing to instance from other instances (referrers), using a single query.
     // (Note that a referrer of instance's class C is a class whose attribute can take instance(s) of C as value(s))
-    // Returns a List of Lists, each sublist is a triple:
-    // the DB_ID, class name and attribute name (that can store values of instance's class) of each referrer instance.
-    private List<List<Object>> findReferrers(GKInstance instance) throws Exception {
-        List<List<Object>> ret = new ArrayList();
-        SchemaClass schemaClass = instance.getSchemClass();
-        try (Session session = driver.session(SessionConfig.forDatabase(getDBName()))) {
-            for (Iterator ri = schemaClass.getReferers().iterator(); ri.hasNext(); ) {
-                GKSchemaAttribute att = (GKSchemaAttribute) ri.next();
-                SchemaAttribute originalAtt = att.getOriginalAttribute();
-                String attName = originalAtt.getName();
-                SchemaClass origin = originalAtt.getOrigin();
-                StringBuilder stmt = new StringBuilder("MATCH (n:")
-                        .append(origin.getName())
-                        .append(")-[:").append(attName).append("]->(s:").append(schemaClass.getName())
-                        .append("{").append("DB_ID:").append(instance.getDBID()).append("}) ")
-                        .append("RETURN n.DB_ID");
-                Result result = session.run(stmt.toString());
-                if (result.hasNext()) {
-                    Long dbID = result.next().get(0).asLong();
-                    ret.add(Arrays.asList(dbID, origin.getName(), attName));
-                }
+    // The relationships are retrieved grouped by attribute name (relationship type) and referrer class, and returned
+    // as a List of Maps, one per relationship: {referrer: referrer's DB_ID, type: attribute name,
+    // properties: relationship properties (e.g. stoichiometry and order)}.
+    private List<Map<String, Object>> findReferrers(GKInstance instance, Transaction tx) throws Exception {
+        List<Map<String, Object>> ret = new ArrayList();
+        String rootClassName = ((GKSchema) schema).getRootClass().getName();
+        CypherQuery stmt = new CypherQuery("MATCH (n:").append(rootClassName).append(")-[r]->(s:").append(rootClassName)
+                .append("{DB_ID:").appendParam(instance.getDBID()).append("}) WHERE n <> s")
+                .append(" RETURN type(r), n.schemaClass, collect({referrer:n.DB_ID, properties:properties(r)})");
+        Result result = stmt.run(tx);
+        while (result.hasNext()) {
+            Record rec = result.next();
+            String attName = rec.get(0).asString();
+            for (Object o : rec.get(2).asList()) {
+                Map<String, Object> rel = new HashMap<>((Map<String, Object>) o);
+                rel.put("type", attName);
+                ret.add(rel);
             }
-            return ret;
         }
+        return ret;
     }
 
-    // Find all referrer instances and then replace the previous instance as value of attName with
-    // the call argument: instance
-    // Takes as the first argument the output of findReferrers
-    private void updateReferrers(List<List<Object>> referrers, GKInstance instance, Transaction tx) throws
+    // Re-create in the database - using a single statement - all relationships from referrers to instance
+    // found by findReferrers (the first argument), with their original types and properties.
+    private void updateReferrers(List<Map<String, Object>> referrers, GKInstance instance, Transaction tx) throws
             Exception {
-        for (List<Object> rec : referrers) {
-            Long dbID = (Long) rec.get(0);
-            String originClassName = rec.get(1).toString();
-            String attName = rec.get(2).toString();
-            GKInstance referrer = (GKInstance) getInstance(originClassName, dbID);
-            referrer.setAttributeValue(attName, instance);
-            updateInstanceAttribute(referrer, attName, tx);
-        }
+        if (referrers.isEmpty()) return;
+        String rootClassName = ((GKSchema) schema).getRootClass().getName();
+        CypherQuery stmt = new CypherQuery("MATCH (s:").append(rootClassName)
+                .append("{DB_ID:").appendParam(instance.getDBID()).append("})")
+                .append(" UNWIND ").appendParam(referrers).append(" AS r")
+                .append(" MATCH (n:").append(rootClassName).append("{DB_ID:r.referrer})")
+                .append(" CALL apoc.create.relationship(n, r.type, r.properties, s) YIELD rel")
+                .append(" RETURN count(rel)");
+        executeTransaction(stmt, tx);
     }
 
     /**
@@ -1166,7 +1898,7 @@ public class Neo4JAdaptor implements PersistenceAdaptor{
         try (Session session = driver.session(SessionConfig.forDatabase(getDBName()))) {
             Transaction tx = session.beginTransaction();
             Long dbId = storeInstance(instance, false, tx, true);
-            tx.commit();
+            commit(tx);
             return dbId;
         }
     }
@@ -1185,7 +1917,7 @@ public class Neo4JAdaptor implements PersistenceAdaptor{
         try (Session session = driver.session(SessionConfig.forDatabase(getDBName()))) {
             Transaction tx = session.beginTransaction();
             Long dbId = storeInstance(instance, forceStore, tx, true);
-            tx.commit();
+            commit(tx);
             return dbId;
         }
     }
@@ -1205,21 +1937,30 @@ public class Neo4JAdaptor implements PersistenceAdaptor{
         return storeInstance(instance, false, tx, true);
     }
 
-    /* Mint new DB_ID */
+    /* Mint new DB_ID - from the block of DB_IDs currently reserved by dbIdAllocator */
     public Long mintNewDBID() throws Exception {
-        Long dbID;
-        try (Session session = driver.session(SessionConfig.forDatabase(getDBName()))) {
-            Transaction tx = session.beginTransaction();
-            Value result = executeTransaction(
-                    "MATCH (s:Seq {key:\"dbIdSeq\"}) CALL apoc.atomic.add(s,'value',1,10) YIELD newValue as seq RETURN seq", tx);
-            if (result != null) {
-                dbID = result.asLong();
-            } else {
-                throw (new Exception("Unable to get auto-incremented dbID value."));
-            }
-            tx.commit();
-        }
-        return dbID;
+        return dbIdAllocator.allocate();
+    }
+
+    /**
+     * Mint count new DB_IDs
+     *
+     * @param count number of DB_IDs to mint
+     * @return List of new DB_IDs in ascending order
+     * @throws Exception Thrown if unable to reserve DB_IDs in the database
+     */
+    public List<Long> mintNewDBIDs(int count) throws Exception {
+        return dbIdAllocator.allocate(count);
+    }
+
+    /**
+     * Set the number of DB_IDs reserved in the database at a time for minting new DB_IDs.
+     * Any DB_IDs left in the currently reserved block are abandoned.
+     *
+     * @param blockSize number of DB_IDs to reserve at a time
+     */
+    public void setDbIdBlockSize(int blockSize) {
+        dbIdAllocator = new DbIdAllocator(driver, database, blockSize);
     }
 
     /**
@@ -1246,7 +1987,6 @@ public class Neo4JAdaptor implements PersistenceAdaptor{
         // cls might be from a local Schema copy. Convert it to the db copy.
         cls = schema.getClassByName(cls.getName());
         List<String> classHierarchy = ((List<GKSchemaClass>) cls.getOrderedAncestors()).stream().map((x) -> (x.getName())).collect(Collectors.toList());
-        StringBuilder stmt = new StringBuilder();
         if (dbID == null || dbID < 0) {
             // Mint new DB_ID
             dbID = mintNewDBID();
@@ -1258,18 +1998,41 @@ public class Neo4JAdaptor implements PersistenceAdaptor{
         if (classHierarchy.size() > 0) {
             labels.append(":").append(String.join(":", classHierarchy));
         }
-        stmt.setLength(0);
-        stmt.append("create (n:").append(labels).append("{").append("DB_ID: ").append(dbID).append(", displayName: \"").append(instance.getDisplayName()).append("\"").append(", schemaClass: \"").append(cls.getName()).append("\"").append("}) RETURN n.DB_ID");
-        Value result = executeTransaction(stmt.toString(), tx);
-        dbID = result.asLong();
-
-        // Store attributes
         // Set _timestamp to current time - before storing in DB
         instance.setAttributeValue(ReactomeJavaConstants._timestamp, getCurrentTimestamp());
+        // Primitive attributes are stored as properties of the node, in the same statement that creates it
+        Map<String, Object> properties = new HashMap<>();
+        List<GKSchemaAttribute> instanceAttributes = new ArrayList<>();
         for (Iterator ai = instance.getSchemaAttributes().iterator(); ai.hasNext(); ) {
             GKSchemaAttribute att = (GKSchemaAttribute) ai.next();
+            if (att.isInstanceTypeAttribute()) {
+                instanceAttributes.add(att);
+            } else if (!att.getName().equals(Schema.DB_ID_NAME)) {
+                List attVals = instance.getAttributeValuesList(att.getName());
+                if (attVals != null && !attVals.isEmpty()) {
+                    properties.put(att.getName(), getPrimitiveValue(att, attVals));
+                }
+            }
+        }
+        properties.put(Schema.DB_ID_NAME, dbID);
+        if (instance.getDisplayName() != null) {
+            properties.put("displayName", instance.getDisplayName());
+        }
+        properties.put("schemaClass", cls.getName());
+        CypherQuery stmt = new CypherQuery("create (n:").append(labels).append(" ")
+                .appendParam(properties).append(") RETURN n.DB_ID");
+        Value result = executeTransaction(stmt, tx);
+        dbID = result.asLong();
+
+        // Store instance-type attributes
+        for (GKSchemaAttribute att : instanceAttributes) {
             storeAttribute(att, instance, tx, recursive);
         }
+        written(instance, tx);
+        CachePatch patch = getCachePatch(tx);
+        patch.instanceCountChanges.merge(cls.getName(), 1L, Long::sum);
+        patch.storedDbIds.add(dbID);
+        patch.deletedDbIds.remove(dbID);
         return dbID;
     }
 
@@ -1314,7 +2077,7 @@ public class Neo4JAdaptor implements PersistenceAdaptor{
                     updateInstance(i, tx);
                 }
             }
-            tx.commit();
+            commit(tx);
         }
     }
 
@@ -1323,56 +2086,81 @@ public class Neo4JAdaptor implements PersistenceAdaptor{
             Exception {
         SchemaClass cls = instance.getSchemClass();
         if (att.getName().equals(Schema.DB_ID_NAME)) return;
-        List<GKInstance> attVals = instance.getAttributeValuesList(att.getName());
+        List attVals = instance.getAttributeValuesList(att.getName());
         if ((attVals == null) || (attVals.isEmpty())) return;
-        List<String> stmts = new ArrayList();
+        CypherQuery stmt = new CypherQuery("MATCH (n:").append(cls.getName())
+                .append("{DB_ID:").appendParam(instance.getDBID()).append("})");
         if (att.isInstanceTypeAttribute()) {
-            Set<Long> processedDBIDs = new HashSet();
-            int order = 0;
-            for (GKInstance attrValInstance : attVals) {
-                Long valDbID;
-                if (recursive)
-                    valDbID = storeInstance(attrValInstance, tx);
-                else
-                    valDbID = attrValInstance.getDBID();
-                if (!processedDBIDs.contains(valDbID)) {
-                    // Compress potentially multiple duplicate values into a single stoichiometry value
-                    long stoichiometry = attVals.stream().filter(v -> v.getDBID().longValue() == valDbID.longValue()).count();
-                    // E.g. select * from Complex_2_hasComponent where DB_ID = 2247475 and hasComponent = 2239405 -> stoichiometry = 670
-                    StringBuilder stmt = new StringBuilder("MATCH (n:").append(cls.getName())
-                            .append("{").append("DB_ID:").append(instance.getDBID()).append("}) ")
-                            .append("MATCH (p:").append(attrValInstance.getSchemClass().getName()).append("{")
-                            .append("DB_ID:").append(valDbID).append("})")
-                            .append(" CREATE (n)-[:").append(att.getName())
-                            .append("{stoichiometry:").append(stoichiometry).append(",order:").append(order)
-                            .append("}").append("]->(p)");
-                    stmts.add(stmt.toString());
-                    processedDBIDs.add(valDbID);
-                    order++;
-                }
-            }
+            List<Map<String, Object>> rels = getRelationshipRows(attVals, tx, recursive);
+            if (rels.isEmpty()) return;
+            // All relationships of att are created by a single statement, irrespective of the number of values.
+            // Values are matched by DB_ID on the root class label, as each value's own class is one of its labels anyway.
+            stmt.append(" UNWIND ").appendParam(rels).append(" AS r")
+                    .append(" MATCH (p:").append(((GKSchema) schema).getRootClass().getName()).append("{DB_ID:r.dbId})")
+                    .append(" CREATE (n)-[:").append(att.getName())
+                    .append("{stoichiometry:r.stoichiometry,order:r.order}]->(p)");
         } else {
-            Object value = instance.getAttributeValue(att.getName());
-            StringBuilder stmt = new StringBuilder("MATCH (n:").append(cls.getName()).append("{").append("DB_ID:").append(instance.getDBID()).append("}) SET n.").append(att.getName()).append(" = ");
-            if (att.getTypeAsInt() == SchemaAttribute.STRING_TYPE) {
-                stmt.append("\"").append(value).append("\"");
-            } else {
-                stmt.append(value);
+            stmt.append(" SET n.").append(att.getName()).append(" = ").appendParam(getPrimitiveValue(att, attVals))
+                    .append(" RETURN n.DB_ID");
+        }
+        executeTransaction(stmt, tx);
+    }
+
+    // Return one row per distinct value (in the order of first appearance) in attVals: {dbId, stoichiometry, order},
+    // storing first - if recursive is set - any values not yet in the database
+    private List<Map<String, Object>> getRelationshipRows(List<GKInstance> attVals, Transaction tx, boolean recursive)
+            throws Exception {
+        List<Long> valDbIDs = new ArrayList<>(attVals.size());
+        for (GKInstance attrValInstance : attVals) {
+            Long valDbID;
+            if (recursive)
+                valDbID = storeInstance(attrValInstance, tx);
+            else
+                valDbID = attrValInstance.getDBID();
+            if (valDbID != null) {
+                valDbIDs.add(valDbID);
             }
-            stmt.append(" RETURN n.DB_ID");
-            stmts.add(stmt.toString());
         }
-        // Set _timestamp to current time - before storing in DB
-        String currentTimeStamp = getCurrentTimestamp();
-        instance.setAttributeValue(ReactomeJavaConstants._timestamp, currentTimeStamp);
-        // Add statement to update _timestamp for the node instance.getDBID()
-        stmts.add(new StringBuilder("MATCH (n:").append(cls.getName()).append("{").append("DB_ID:").append(instance.getDBID())
-                .append("}) SET n.").append(ReactomeJavaConstants._timestamp)
-                .append(" = ").append("\"").append(currentTimeStamp).append("\"").toString());
+        return getRelationshipRows(valDbIDs);
+    }
 
-        for (String stmt : stmts) {
-            executeTransaction(stmt, tx);
+    // Return one row per distinct DB_ID (in the order of first appearance) in valDbIDs: {dbId, stoichiometry, order}
+    static List<Map<String, Object>> getRelationshipRows(List<Long> valDbIDs) {
+        // Compress potentially multiple duplicate values into a single stoichiometry value, in one pass over valDbIDs
+        // E.g. select * from Complex_2_hasComponent where DB_ID = 2247475 and hasComponent = 2239405 -> stoichiometry = 670
+        Map<Long, Long> dbId2Stoichiometry = new LinkedHashMap<>();
+        for (Long valDbID : valDbIDs) {
+            dbId2Stoichiometry.merge(valDbID, 1L, Long::sum);
+        }
+        List<Map<String, Object>> rels = new ArrayList<>(dbId2Stoichiometry.size());
+        int order = 0;
+        for (Map.Entry<Long, Long> entry : dbId2Stoichiometry.entrySet()) {
+            Map<String, Object> rel = new HashMap<>();
+            rel.put("dbId", entry.getKey());
+            rel.put("stoichiometry", entry.getValue());
+            rel.put("order", order++);
+            rels.add(rel);
         }
+        return rels;
+    }
+
+    // Value of the primitive attribute att to be stored in the database: the List of all values
+    // if att is a multi-value attribute; the first value otherwise
+    private Object getPrimitiveValue(SchemaAttribute att, List attVals) {
+        if (att.isMultiple()) {
+            return new ArrayList(attVals);
+        }
+        return attVals.get(0);
+    }
+
+    // Set _timestamp of instance to current time - both in instance and in the database
+    private void updateTimestamp(GKInstance instance, Transaction tx) throws Exception {
+        String currentTimeStamp = getCurrentTimestamp();
+        instance.setAttributeValue(ReactomeJavaConstants._timestamp, currentTimeStamp);
+        CypherQuery stmt = new CypherQuery("MATCH (n:").append(instance.getSchemClass().getName())
+                .append("{DB_ID:").appendParam(instance.getDBID()).append("}) SET n.")
+                .append(ReactomeJavaConstants._timestamp).append(" = ").appendParam(currentTimeStamp);
+        executeTransaction(stmt, tx);
     }
 
     // Delete from instance attribute: att (using tx as the transaction object)
@@ -1383,9 +2171,9 @@ public class Neo4JAdaptor implements PersistenceAdaptor{
         List attVals = instance.getAttributeValuesList(att.getName());
         if ((attVals == null) || (attVals.isEmpty())) return;
         if (att.isInstanceTypeAttribute()) {
-            StringBuilder stmt = new StringBuilder("MATCH (n:");
-            stmt.append(cls.getName()).append("{").append("DB_ID:").append(instance.getDBID()).append("}) ").append("-[r:").append(att.getName()).append("]->() DELETE r");
-            executeTransaction(stmt.toString(), tx);
+            CypherQuery stmt = new CypherQuery("MATCH (n:");
+            stmt.append(cls.getName()).append("{DB_ID:").appendParam(instance.getDBID()).append("}) ").append("-[r:").append(att.getName()).append("]->() DELETE r");
+            executeTransaction(stmt, tx);
         }
     }
 
@@ -1789,29 +2577,22 @@ public class Neo4JAdaptor implements PersistenceAdaptor{
         if (values.isEmpty()) {
             throw (new Exception("The Collection of values is empty!"));
         }
-        List<String> strValues = (List<String>) values.stream().map(i -> i.toString()).collect(Collectors.toList());
         String attName = att.getName();
-        StringBuilder query = new StringBuilder("MATCH (n:").append(origin.getName()).append(")");
+        CypherQuery query = new CypherQuery("MATCH (n:").append(origin.getName()).append(")");
         if (att.isInstanceTypeAttribute()) {
             query.append("-[:").append(attName).append("]->(a)")
                     .append("WITH a.DB_ID as attrDBID, n.DB_ID as DB_ID, count(*) as cnt WHERE attrDBID IN ")
-                    .append("[")
-                    .append(StringUtils.join(",", strValues))
-                    .append("] ")
-                    .append("AND cnt = ").append(count).append(" RETURN DB_ID");
+                    .appendParam(toLongs(values))
+                    .append(" AND cnt = ").appendParam(count).append(" RETURN DB_ID");
         } else {
-            query.append(" WITH n.").append(attName).append(" as attrName, n.DB_ID as DB_ID, count(*) as cnt WHERE (");
-            boolean first = true;
-            for (Object value : strValues) {
-                if (first) first = false;
-                else query.append(" OR ");
-                query.append("\"").append(value).append("\"").append(" IN attrName");
-            }
-            query.append(")").append(" AND cnt = ").append(count).append(" RETURN DB_ID");
+            List<String> strValues = (List<String>) values.stream().map(i -> i.toString()).collect(Collectors.toList());
+            query.append(" WITH n.").append(attName).append(" as attrName, n.DB_ID as DB_ID, count(*) as cnt")
+                    .append(" WHERE ANY(v IN ").appendParam(strValues).append(" WHERE v IN attrName)")
+                    .append(" AND cnt = ").appendParam(count).append(" RETURN DB_ID");
         }
         Collection<Long> ret = new ArrayList<Long>();
         try (Session session = driver.session(SessionConfig.forDatabase(this.database))) {
-            Result result = session.run(query.toString());
+            Result result = query.run(session);
             while (result.hasNext()) {
                 Record record = result.next();
                 long dbId = record.get(0).asLong();
@@ -1869,37 +2650,58 @@ public class Neo4JAdaptor implements PersistenceAdaptor{
      * @throws Exception Thrown if there is a problem querying the database for the dbIds
      */
     public Set<Long> existing(Collection<Long> dbIds, boolean checkCache, boolean inverse) throws Exception {
-        Set<Long> foundDBIds = new HashSet(dbIds.size());
+        return existingBitmap(dbIds, checkCache, inverse).toSet();
+    }
+
+    /**
+     * As existing(), but returns the DB_IDs as a DbIdBitmap - which takes much less space for large answers (e.g.
+     * all DB_IDs not in a short list) and can be turned into ranges of consecutive DB_IDs. The answer is computed in
+     * memory if buildDbIdBitmap() has been called; otherwise only the DB_IDs not found in the cache are queried.
+     *
+     * @param dbIds      the db ids to check
+     * @param checkCache check cache (before checking the DB) if true; only used if inverse is false
+     * @param inverse search for intersection (inverse = false) or disjunctive union (inverse = true) of existing DB_Ids with the list provided
+     * @return the db ids which are in the database (or cache - of checkCache is true)
+     * @throws Exception Thrown if there is a problem querying the database for the dbIds
+     */
+    public DbIdBitmap existingBitmap(Collection<Long> dbIds, boolean checkCache, boolean inverse) throws Exception {
+        DbIdBitmap foundDBIds = new DbIdBitmap();
         if (dbIds == null || dbIds.size() == 0)
             return foundDBIds;
-        // Check the cache.
-        List<Long> needCheckedList = new ArrayList<Long>(dbIds);
-        for (Iterator it = needCheckedList.iterator(); it.hasNext(); ) {
-            Long dbID = (Long) it.next();
-            if (instanceCache.containsKey(dbID)) {
-                foundDBIds.add(dbID);
-                it.remove();
-            }
+        DbIdBitmap requested = DbIdBitmap.of(dbIds);
+        // Check the cache (instances in it but not yet committed are reported as existing)
+        if (checkCache && !inverse) {
+            requested.forEach(dbId -> {
+                if (instanceCache.containsKey(dbId)) {
+                    foundDBIds.add(dbId);
+                }
+            });
         }
-        if (needCheckedList.size() == 0)
-            return foundDBIds;
-        // Check the database
-        SchemaClass root = ((GKSchema) getSchema()).getRootClass();
-        StringBuilder query = new StringBuilder("MATCH (n:").append(root.getName()).append(")");
-        if (dbIds != null) {
+        DbIdBitmap allDBIds = dbIdBitmap;
+        if (allDBIds != null) {
             if (inverse)
-                query.append(" WHERE NOT n.DB_ID IN");
-            else
-                query.append(" WHERE n.DB_ID IN");
-            query.append(dbIds);
+                return allDBIds.andNot(requested);
+            DbIdBitmap ret = allDBIds.and(requested);
+            foundDBIds.forEach(ret::add);
+            return ret;
         }
+        // Check the database
+        DbIdBitmap needChecked = inverse ? requested : requested.andNot(foundDBIds);
+        if (needChecked.isEmpty())
+            return foundDBIds;
+        SchemaClass root = ((GKSchema) getSchema()).getRootClass();
+        CypherQuery query = new CypherQuery("MATCH (n:").append(root.getName()).append(")");
+        if (inverse)
+            query.append(" WHERE NOT n.DB_ID IN ");
+        else
+            query.append(" WHERE n.DB_ID IN ");
+        query.appendParam(new ArrayList<>(needChecked.toSet()));
         query.append(" RETURN n.DB_ID");
         try (Session session = driver.session(SessionConfig.forDatabase(this.database))) {
-            Result result = session.run(query.toString());
+            Result result = query.run(session);
             while (result.hasNext()) {
                 Record record = result.next();
-                long dbId = record.get(0).asLong();
-                foundDBIds.add(dbId);
+                foundDBIds.add(record.get(0).asLong());
             }
         }
         return foundDBIds;
@@ -1920,9 +2722,14 @@ public class Neo4JAdaptor implements PersistenceAdaptor{
         // In case this instance is in the referrers cache of its references
         cleanUpReferences(instance);
         SchemaClass cls = fetchSchemaClassByDBID(dbID);
-        deleteInstanceFromNeo4J(cls, dbID, tx);
+        List<Object> neighbours = deleteInstanceFromNeo4J(cls, dbID, tx);
         // Delete the Instance from the cache, but only after it has been deleted from referrers.
         instanceCache.remove(instance.getDBID());
+        // Once tx is committed, remove the values of the instance from attributeValuesCache, and re-load those of the
+        // instances that were connected to it
+        CachePatch patch = getCachePatch(tx);
+        patch.dbIds.add(dbID);
+        patch.dbIds.addAll(toLongs(neighbours));
     }
 
     /**
@@ -1937,14 +2744,16 @@ public class Neo4JAdaptor implements PersistenceAdaptor{
         try (Session session = driver.session(SessionConfig.forDatabase(getDBName()))) {
             Transaction tx = session.beginTransaction();
             deleteInstance(instance, tx);
-            tx.commit();
+            commit(tx);
         }
     }
 
     public String fetchSchemaClassnameByDBID(Long dbID) {
-        StringBuilder query = new StringBuilder("MATCH (n) WHERE n.DB_ID=").append(dbID).append(" RETURN n.schemaClass");
+        // Through the root class label, so that the DB_ID index is used (see IndexBootstrapper)
+        CypherQuery query = new CypherQuery("MATCH (n:").append(((GKSchema) schema).getRootClass().getName())
+                .append(") WHERE n.DB_ID = ").appendParam(dbID).append(" RETURN n.schemaClass");
         try (Session session = driver.session(SessionConfig.forDatabase(this.database))) {
-            Result result = session.run(query.toString());
+            Result result = query.run(session);
             if (result.hasNext()) {
                 Record record = result.next();
                 return record.get(0).asString();
@@ -1978,19 +2787,27 @@ public class Neo4JAdaptor implements PersistenceAdaptor{
         }
     }
 
-    private void deleteInstanceFromNeo4J(SchemaClass cls, Long dbID, Transaction tx) {
+    // Return DB_IDs of the nodes at the other end of the relationships of the deleted node
+    private List<Object> deleteInstanceFromNeo4J(SchemaClass cls, Long dbID, Transaction tx) {
         // NB. DETACH DELETE removes the node and all its relationships
         // (but not nodes at the other end of those relationships)
-        StringBuilder stmt = new StringBuilder("MATCH (n:").append(cls.getName()).append("{").append("DB_ID:").append(dbID).append("}) DETACH DELETE n");
-        executeTransaction(stmt.toString(), tx);
+        CypherQuery stmt = new CypherQuery("MATCH (n:").append(cls.getName()).append("{DB_ID:").appendParam(dbID).append("})")
+                .append(" OPTIONAL MATCH (n)--(m) WITH n, collect(DISTINCT m.DB_ID) AS neighbours")
+                .append(" DETACH DELETE n RETURN neighbours");
+        Value neighbours = executeTransaction(stmt, tx);
+        CachePatch patch = getCachePatch(tx);
+        patch.instanceCountChanges.merge(cls.getName(), -1L, Long::sum);
+        patch.deletedDbIds.add(dbID);
+        patch.storedDbIds.remove(dbID);
+        return neighbours == null ? Collections.emptyList() : neighbours.asList();
     }
 
     // Adapted from: https://neo4j.com/docs/java-reference/current/transaction-management/
-    private Value executeTransaction(String statement, Transaction tx) {
+    private Value executeTransaction(CypherQuery statement, Transaction tx) {
         Throwable txEx = null;
         for (int i = 0; i < RETRIES; i++) {
             try {
-                Result result = tx.run(statement);
+                Result result = statement.run(tx);
                 if (result.hasNext()) {
                     return result.next().get(0);
                 }
@@ -2037,13 +2854,13 @@ public class Neo4JAdaptor implements PersistenceAdaptor{
     public Collection fetchInstancesByClass(String className, List dbIds) throws Exception {
         Set<Instance> instances = new HashSet();
         ((GKSchema) schema).isValidClassOrThrow(className);
-        StringBuilder query = new StringBuilder("MATCH (n:").append(className).append(")");
+        CypherQuery query = new CypherQuery("MATCH (n:").append(className).append(")");
         if (dbIds != null) {
-            query.append(" WHERE n.DB_ID IN").append(dbIds);
+            query.append(" WHERE n.DB_ID IN ").appendParam(toLongs(dbIds));
         }
         query.append(" RETURN n.DB_ID, n._displayName, n.schemaClass");
         try (Session session = driver.session(SessionConfig.forDatabase(this.database))) {
-            Result result = session.run(query.toString());
+            Result result = query.run(session);
             while (result.hasNext()) {
                 Record record = result.next();
                 long dbId = record.get(0).asLong();
@@ -2058,6 +2875,145 @@ public class Neo4JAdaptor implements PersistenceAdaptor{
         }
     }
 
+    /**
+     * Pass the instances of class className (including those of its subclasses) to consumer one at a time, as they
+     * are read from the database, so that they need not all be held in memory at once. Every instance is passed as a
+     * new shell (DB_ID, schema class and display name only), which is not put into InstanceCache - even if the instance
+     * is in InstanceCache, so that what consumer gets (and e.g. serializes) is the same for all instances, rather than
+     * the whole graph of those that happen to be cached and inflated.
+     *
+     * @param className name of the class
+     * @param consumer  consumer of the instances, e.g. one writing them to a response as they arrive
+     * @throws Exception Thrown if the class name is invalid, if unable to query the database, or if thrown by consumer
+     */
+    public void streamInstancesByClass(String className, InstanceConsumer consumer) throws Exception {
+        ((GKSchema) schema).isValidClassOrThrow(className);
+        CypherQuery query = new CypherQuery("MATCH (n:").append(className).append(")")
+                .append(" RETURN n.DB_ID, n._displayName, n.schemaClass");
+        try (Session session = driver.session(SessionConfig.forDatabase(this.database))) {
+            Result result = query.run(session);
+            while (result.hasNext()) {
+                Record record = result.next();
+                long dbId = record.get(0).asLong();
+                String displayName = record.get(1).asString();
+                String schemaClass = record.get(2).asString();
+                GKInstance instance = newInstance(schemaClass, dbId);
+                instance.setDisplayName(displayName);
+                consumer.accept(instance);
+            }
+        }
+    }
+
+    /**
+     * Consumer of the instances passed by streamInstancesByClass() and traverse()
+     */
+    public interface InstanceConsumer {
+        void accept(Instance instance) throws Exception;
+    }
+
+    /**
+     * Traverse the graph from the instances with DB_IDs startDbIds, following the attributes and reverse attributes of
+     * instructions - as InstanceUtilities.followInstanceAttributes() (or followInstanceAttributesStrictly()) does, but in
+     * the database: breadth-first, in one query per depth for all the instances at that depth (in batches of at most
+     * FrontierTraversal.DEFAULT_BATCH_SIZE) and all instructions. Each instance reached, including those of startDbIds,
+     * is passed to consumer once, as it is read: as it is in InstanceCache, or otherwise as a new shell (which is not
+     * put into InstanceCache) - with its display name set, if not loaded already.
+     *
+     * @param startDbIds   DB_IDs of the instances to start from
+     * @param instructions ClassAttributeFollowingInstructions
+     * @param strictly     if true, an instruction applies to instances of its class only, not to those of subclasses
+     * @param consumer     consumer of the instances reached, e.g. one writing them to a response as they arrive
+     * @throws Exception Thrown if a class or attribute name in instructions is invalid, if unable to query the database,
+     *                   or if thrown by consumer
+     */
+    public void traverse(Collection<Long> startDbIds, Collection<ClassAttributeFollowingInstruction> instructions,
+                         boolean strictly, InstanceConsumer consumer) throws Exception {
+        GKSchema gkSchema = (GKSchema) schema;
+        String match = "UNWIND $dbIds AS dbId MATCH (n:" + gkSchema.getRootClass().getName() + "{DB_ID:dbId})";
+        Map<String, Object> params = new HashMap<>();
+        // One query per instruction and direction of its attributes, combined by UNION
+        List<String> queries = new ArrayList<>();
+        for (ClassAttributeFollowingInstruction cafi : instructions) {
+            gkSchema.isValidClassOrThrow(cafi.getClassName());
+            GKSchemaClass cls = (GKSchemaClass) gkSchema.getClassByName(cafi.getClassName());
+            String classCondition = " WHERE n:" + cls.getName();
+            if (strictly) {
+                String param = "className" + params.size();
+                params.put(param, cls.getName());
+                classCondition = " WHERE n.schemaClass = $" + param;
+            }
+            Set<String> outgoing = new HashSet<>();
+            Set<String> incoming = new HashSet<>();
+            for (Iterator ai = cafi.getAttributes().iterator(); ai.hasNext(); ) {
+                String attName = (String) ai.next();
+                // Values of primitive attributes lead nowhere
+                if (cls.getAttribute(attName).isInstanceTypeAttribute()) {
+                    (cls.isIncomingAttribute(attName) ? incoming : outgoing).add(attName);
+                }
+            }
+            addTraversalQuery(queries, params, match + "-[r]->(s)" + classCondition, outgoing);
+            addTraversalQuery(queries, params, match + "<-[r]-(s)" + classCondition, incoming);
+            for (Iterator rai = cafi.getReverseAttributes().iterator(); rai.hasNext(); ) {
+                String attName = (String) rai.next();
+                // Instances s of the classes with attribute attName, of which n is a value
+                for (Iterator ri = cls.getReferersByName(attName).iterator(); ri.hasNext(); ) {
+                    GKSchemaClass origin = (GKSchemaClass) ((SchemaAttribute) ri.next()).getOrigin();
+                    String pattern = origin.isIncomingAttribute(attName) ? "-[r]->(s:" : "<-[r]-(s:";
+                    addTraversalQuery(queries, params, match + pattern + origin.getName() + ")" + classCondition,
+                            Collections.singleton(attName));
+                }
+            }
+        }
+        String query = String.join(" UNION ", queries);
+        DbIdBitmap reached = new DbIdBitmap();
+        try (Session session = driver.session(SessionConfig.forDatabase(this.database))) {
+            List<Long> frontier = new ArrayList<>();
+            runTraversalQuery(session, "UNWIND $dbIds AS dbId MATCH (s:" + gkSchema.getRootClass().getName() +
+                    "{DB_ID:dbId})" + TRAVERSAL_RETURN, params, new ArrayList<>(startDbIds), reached, frontier, consumer);
+            while (!frontier.isEmpty() && !queries.isEmpty()) {
+                List<Long> next = new ArrayList<>();
+                runTraversalQuery(session, query, params, frontier, reached, next, consumer);
+                frontier = next;
+            }
+        }
+    }
+
+    // Add to queries the query following relationships of types from the instances matched by prefix (if any types)
+    private void addTraversalQuery(List<String> queries, Map<String, Object> params, String prefix, Collection<String> types) {
+        if (types.isEmpty()) {
+            return;
+        }
+        String param = "types" + params.size();
+        params.put(param, new ArrayList<>(types));
+        queries.add(prefix + " AND type(r) IN $" + param + TRAVERSAL_RETURN);
+    }
+
+    // Run query for the instances with DB_IDs dbIds (in batches), passing each instance returned that has not been
+    // reached before to consumer, and adding its DB_ID to reached and to next
+    private void runTraversalQuery(Session session, String query, Map<String, Object> params, List<Long> dbIds,
+                                   DbIdBitmap reached, List<Long> next, InstanceConsumer consumer) throws Exception {
+        SchemaAttribute _displayName = ((GKSchema) schema).getRootClass().getAttribute(ReactomeJavaConstants._displayName);
+        for (int from = 0; from < dbIds.size(); from += FrontierTraversal.DEFAULT_BATCH_SIZE) {
+            Map<String, Object> batchParams = new HashMap<>(params);
+            batchParams.put("dbIds", new ArrayList<>(dbIds.subList(from, Math.min(dbIds.size(), from + FrontierTraversal.DEFAULT_BATCH_SIZE))));
+            Result result = session.run(query, batchParams);
+            while (result.hasNext()) {
+                Record record = result.next();
+                if (record.get("dbId") == NullValue.NULL || !reached.add(record.get("dbId").asLong())) continue;
+                long dbId = record.get("dbId").asLong();
+                next.add(dbId);
+                GKInstance instance = useInstanceCache ? instanceCache.get(dbId) : null;
+                if (instance == null) {
+                    instance = newInstance(record.get("schemaClass").asString(), dbId);
+                }
+                if (!instance.isAttributeValueLoaded(_displayName) && record.get("displayName") != NullValue.NULL) {
+                    instance.setDisplayName(record.get("displayName").asString());
+                }
+                consumer.accept(instance);
+            }
+        }
+    }
+
     /**
      * Fetch instances from a specified class and a list of db ids in that class.
      *
@@ -2076,38 +3032,101 @@ public class Neo4JAdaptor implements PersistenceAdaptor{
     }
 
     /**
-     * Finds the largest DB_ID currently in the database.
+     * Finds the largest DB_ID currently in the database. It is looked up (in the DB_ID index, in descending order)
+     * only the first time; after that, it is kept up to date by the stores and deletes committed by this adaptor.
      *
      * @return max DB_ID
      */
     public long fetchMaxDbId() {
-        try (Session session = driver.session(SessionConfig.forDatabase(this.database))) {
-            Result result = session.run("MATCH(n) RETURN MAX(n.DB_ID)");
-            Record record = result.next();
-            return record.get(0).asLong();
+        long max = maxDbId.get();
+        if (max < 0) {
+            String query = "MATCH (n:" + ((GKSchema) schema).getRootClass().getName() + ") WHERE n.DB_ID IS NOT NULL " +
+                    "RETURN n.DB_ID ORDER BY n.DB_ID DESC LIMIT 1";
+            try (Session session = driver.session(SessionConfig.forDatabase(this.database))) {
+                Result result = session.run(query);
+                max = result.hasNext() ? result.next().get(0).asLong() : 0;
+            }
+            // A store committed in the meantime may have raised it already
+            max = maxDbId.accumulateAndGet(max, Math::max);
         }
+        return max;
     }
 
+    /**
+     * @param className name of the class
+     * @return number of instances of className, including those of its subclasses
+     * @throws InvalidClassException if className is not in the schema
+     */
     public long getClassInstanceCount(String className) throws InvalidClassException {
         ((GKSchema) schema).isValidClassOrThrow(className);
-        StringBuilder query = new StringBuilder("MATCH (n:").append(className).append(") RETURN count(n)");
-        try (Session session = driver.session(SessionConfig.forDatabase(this.database))) {
-            Result result = session.run(query.toString());
-            Record record = result.next();
-            return record.get(0).asLong();
+        Set<String> classNames = new HashSet<>();
+        collectSubClassNames((GKSchemaClass) schema.getClassByName(className), classNames);
+        Map<String, Long> counts = getInstanceCounts();
+        long count = 0;
+        for (String name : classNames) {
+            count += counts.getOrDefault(name, 0L);
         }
+        return count;
     }
 
+    /**
+     * NOTE: Instances are counted by label (see getInstanceCounts()), not by their schemaClass property: nodes without
+     * a DB_ID are counted too, while nodes whose schemaClass is not a class of the schema are not counted at all.
+     *
+     * @return class name -> number of instances of exactly that class (i.e. not counting its subclasses), for the
+     * classes that have instances
+     */
     public Map getAllInstanceCounts() throws Exception {
         Map<String, Long> map = new HashMap();
-        String query = "MATCH (n) WHERE n.schemaClass is not null RETURN n.schemaClass, count(n.DB_ID)";
-        try (Session session = driver.session(SessionConfig.forDatabase(this.database))) {
-            Result result = session.run(query);
-            while (result.hasNext()) {
-                Record record = result.next();
-                map.put(record.get(0).asString(), record.get(1).asLong());
+        for (Map.Entry<String, Long> entry : getInstanceCounts().entrySet()) {
+            if (entry.getValue() > 0) {
+                map.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return map;
+    }
+
+    // Return class name -> number of instances of exactly that class - loaded the first time, then kept up to date by
+    // commit(). The number of nodes with each label is taken from Neo4J's count store (rather than by scanning the
+    // nodes) - hence count(n) alone in each WITH, as the label is only added to the row afterwards. As each node has
+    // the labels of its class and all its ancestors, the number of instances of exactly class C is the count of
+    // label C minus the counts of the labels of the direct subclasses of C.
+    private Map<String, Long> getInstanceCounts() {
+        Map<String, Long> counts = instanceCounts;
+        if (counts != null) {
+            return counts;
+        }
+        synchronized (instanceCountsLock) {
+            if (instanceCounts == null) {
+                List<GKSchemaClass> classes = new ArrayList<>();
+                CypherQuery query = new CypherQuery();
+                for (Object cls : schema.getClasses()) {
+                    if (!classes.isEmpty()) {
+                        query.append(" UNION ALL ");
+                    }
+                    classes.add((GKSchemaClass) cls);
+                    query.append("MATCH (n:").append(((GKSchemaClass) cls).getName()).append(") WITH count(n) AS count RETURN ")
+                            .appendParam(((GKSchemaClass) cls).getName()).append(" AS label, count");
+                }
+                Map<String, Long> labelCounts = new HashMap<>();
+                try (Session session = driver.session(SessionConfig.forDatabase(this.database))) {
+                    Result result = query.run(session);
+                    while (result.hasNext()) {
+                        Record record = result.next();
+                        labelCounts.put(record.get(0).asString(), record.get(1).asLong());
+                    }
+                }
+                counts = new ConcurrentHashMap<>();
+                for (GKSchemaClass cls : classes) {
+                    long count = labelCounts.getOrDefault(cls.getName(), 0L);
+                    for (Object subClass : cls.getSubClasses()) {
+                        count -= labelCounts.getOrDefault(((GKSchemaClass) subClass).getName(), 0L);
+                    }
+                    counts.put(cls.getName(), count);
+                }
+                instanceCounts = counts;
             }
-            return map;
+            return instanceCounts;
         }
     }
 
@@ -2140,9 +3159,11 @@ public class Neo4JAdaptor implements PersistenceAdaptor{
      * @return true if existing; false otherwise
      */
     public boolean exist(Long dbID) throws NotImplementedException {
-        StringBuilder query = new StringBuilder("MATCH (n) WHERE n.DB_ID = ").append(dbID).append(" RETURN n.DB_ID");
+        // Through the root class label, so that the DB_ID index is used (see IndexBootstrapper)
+        CypherQuery query = new CypherQuery("MATCH (n:").append(((GKSchema) schema).getRootClass().getName())
+                .append(") WHERE n.DB_ID = ").appendParam(dbID).append(" RETURN n.DB_ID");
         try (Session session = driver.session(SessionConfig.forDatabase(this.database))) {
-            Result result = session.run(query.toString());
+            Result result = query.run(session);
             if (result.hasNext()) {
                 return true;
             }
@@ -2153,8 +3174,8 @@ public class Neo4JAdaptor implements PersistenceAdaptor{
     /**
      * Tries to get an instance of the given class, with the given DB_ID, from
      * instance cache, if possible.  Otherwise, creates a new instance with
-     * the given DB_ID.  This new instance will be cached even if caching is
-     * switched off.
+     * the given DB_ID.  This new instance is cached only if caching is
+     * switched on.
      *
      * @param className Name of the class for the instance to retrieve or create
      * @param dbID      DbId value for the instance to retrieve or create
@@ -2167,20 +3188,30 @@ public class Neo4JAdaptor implements PersistenceAdaptor{
             InstantiationException, IllegalAccessException, ClassNotFoundException {
         GKInstance instance;
         if (!useInstanceCache || (instance = instanceCache.get(dbID)) == null) {
-            if (classMap != null && classMap.containsKey(className)) {
-                String targetClassName = (String) classMap.get(className);
-                instance = (GKInstance) Class.forName(targetClassName).newInstance();
-            } else {
-                instance = new GKInstance();
+            instance = newInstance(className, dbID);
+            if (useInstanceCache) {
+                instanceCache.put(instance);
             }
-            instance.setSchemaClass(getSchema().getClassByName(className));
-            instance.setDBID(dbID);
-            instance.setDbAdaptor(this);
-            instanceCache.put(instance);
         }
         return instance;
     }
 
+    // Create a new (shell) instance of class className, without putting it in InstanceCache
+    private GKInstance newInstance(String className, Long dbID) throws
+            InstantiationException, IllegalAccessException, ClassNotFoundException {
+        GKInstance instance;
+        if (classMap != null && classMap.containsKey(className)) {
+            String targetClassName = (String) classMap.get(className);
+            instance = (GKInstance) Class.forName(targetClassName).newInstance();
+        } else {
+            instance = new GKInstance();
+        }
+        instance.setSchemaClass(getSchema().getClassByName(className));
+        instance.setDBID(dbID);
+        instance.setDbAdaptor(this);
+        return instance;
+    }
+
     public String getSchemaTimestamp() {
         try (Session session = driver.session(SessionConfig.forDatabase(this.database))) {
             Result result = session.run("MATCH(s:Schema) RETURN s.timestamp");
@@ -2269,30 +3300,19 @@ public class Neo4JAdaptor implements PersistenceAdaptor{
         return fetchInstanceByAttribute(((GKSchema) schema).getRootClass().getName(), "DB_ID", "=", dbIDs);
     }
 
-    // Adapted from https://stackoverflow.com/questions/520328/can-you-find-all-classes-in-a-package-using-reflection
-    private static Collection<String> getClassNames(final String pack) throws java.io.IOException {
-        final StandardJavaFileManager fileManager = ToolProvider.getSystemJavaCompiler().getStandardFileManager(null, null, null);
-        return StreamSupport.stream(
-                        fileManager.list(StandardLocation.CLASS_PATH, pack, Collections.singleton(JavaFileObject.Kind.CLASS), false).spliterator(),
-                        false)
-                .map(javaFileObject -> {
-                    final String[] split = javaFileObject.getName()
-                            .replace(".class", "")
-                            .replace(")", "")
-                            .split(Pattern.quote(File.separator));
-                    String className = split[split.length - 1];
-                    if (className.indexOf("$") == -1)
-                        // Exclude inner classes
-                        return className;
-                    return null;
-                })
-                .filter(x -> x != null).collect(Collectors.toCollection(ArrayList::new));
-    }
 
-    private static String escapeMetaCypherCharactersForRegexQuery(String str) {
-        for (String metaCh : META_CYPHER_CHARS) {
-            str = str.replaceAll(metaCh, "\\" + metaCh);
+    // Convert DB_IDs (as Longs, Numbers, Strings or Instances) into a List of Longs to be passed as a query parameter
+    private static List<Long> toLongs(Collection dbIds) {
+        List<Long> ret = new ArrayList<>(dbIds.size());
+        for (Object o : dbIds) {
+            if (o instanceof Instance) {
+                ret.add(((Instance) o).getDBID());
+            } else if (o instanceof Number) {
+                ret.add(((Number) o).longValue());
+            } else {
+                ret.add(Long.parseLong(o.toString()));
+            }
         }
-        return str;
+        return ret;
     }
 }
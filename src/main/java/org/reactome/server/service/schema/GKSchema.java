@@ -132,6 +132,21 @@ public class GKSchema implements Schema, Serializable {
 			GKSchemaClass c = (GKSchemaClass) i.next();
 			c.initialise();
 		}
+		compile();
+	}
+
+	/**
+	 * Compile the lookup tables of the classes (class index bitsets for isa, referers by name, defining attributes) -
+	 * once the classes are complete. These are not serialized, hence need compiling again after deserialization.
+	 */
+	public void compile() {
+		GKSchemaClass[] classTable = (GKSchemaClass[]) getClasses().toArray(new GKSchemaClass[0]);
+		for (int index = 0; index < classTable.length; index++) {
+			classTable[index].setClassIndex(classTable, index);
+		}
+		for (int index = 0; index < classTable.length; index++) {
+			classTable[index].compile();
+		}
 	}
 
 	public SchemaClass getRootClass() {
@@ -27,7 +27,15 @@ public class GKSchemaClass implements SchemaClass, Serializable {
 	private Set reverseAttributes = new HashSet();
 	private Set reverseAttributeNames = new HashSet();
 	private static Comparator classAncestorSorter;
-	private Collection[] definingAttributes;
+	// Names of the attributes whose relationships point to instances of this class in the graph
+	private Set incomingAttributeNames = new HashSet();
+	// Tables compiled from the above by compile() - see GKSchema.compile()
+	private transient Collection[] definingAttributes;
+	private transient Collection allDefiningAttributes;
+	private transient Map referersByName;
+	private transient GKSchemaClass[] classTable;
+	private transient int classIndex = -1;
+	private transient long[] ancestorBits;
 
 
 	public GKSchemaClass() {
@@ -108,6 +116,10 @@ public class GKSchemaClass implements SchemaClass, Serializable {
 	}
 
 	public Collection getReferersByName(String attName) {
+		if (referersByName != null) {
+			Collection out = (Collection) referersByName.get(attName);
+			return out == null ? Collections.EMPTY_LIST : out;
+		}
 		Collection out = new ArrayList();
 		for (Iterator i = getReferers().iterator(); i.hasNext();) {
 			SchemaAttribute a = (SchemaAttribute) i.next();
@@ -432,7 +444,79 @@ public class GKSchemaClass implements SchemaClass, Serializable {
 		findOwnAttributes();
 		findReferers();
 	}
+
+	/**
+	 * @param classTable all classes of the schema, each at the index assigned to it
+	 * @param classIndex index of this class in classTable
+	 */
+	protected void setClassIndex(GKSchemaClass[] classTable, int classIndex) {
+		this.classTable = classTable;
+		this.classIndex = classIndex;
+	}
+
+	/**
+	 * Build the immutable lookup tables used by isa(SchemaClass), getReferersByName() and getDefiningAttributes() -
+	 * once all classes of the schema have been given their index.
+	 */
+	protected void compile() {
+		// This class and its ancestors, by index in classTable
+		long[] bits = new long[(classTable.length + 63) >>> 6];
+		bits[classIndex >>> 6] |= 1L << classIndex;
+		for (Iterator ai = ancestors.values().iterator(); ai.hasNext();) {
+			int index = ((GKSchemaClass) ai.next()).classIndex;
+			if (index >= 0) {
+				bits[index >>> 6] |= 1L << index;
+			}
+		}
+		ancestorBits = bits;
+
+		Map byName = new HashMap();
+		for (Iterator rai = reverseAttributes.iterator(); rai.hasNext();) {
+			SchemaAttribute a = (SchemaAttribute) rai.next();
+			List referers = (List) byName.get(a.getName());
+			if (referers == null) {
+				referers = new ArrayList();
+				byName.put(a.getName(), referers);
+			}
+			referers.add(a);
+		}
+		for (Iterator ei = byName.entrySet().iterator(); ei.hasNext();) {
+			Map.Entry entry = (Map.Entry) ei.next();
+			entry.setValue(Collections.unmodifiableList((List) entry.getValue()));
+		}
+		referersByName = Collections.unmodifiableMap(byName);
+
+		Collection[] defining = new Collection[3];
+		Set all = new HashSet();
+		for (int defType = 0; defType < defining.length; defType++) {
+			Set atts = new HashSet();
+			for (Iterator ai = getAttributes().iterator(); ai.hasNext();) {
+				GKSchemaAttribute att = (GKSchemaAttribute) ai.next();
+				if (att.getDefiningType() == defType) {
+					atts.add(att);
+				}
+			}
+			if (defType == SchemaAttribute.ALL_DEFINING || defType == SchemaAttribute.ANY_DEFINING) {
+				all.addAll(atts);
+			}
+			defining[defType] = atts.isEmpty() ? null : Collections.unmodifiableSet(atts);
+		}
+		definingAttributes = defining;
+		allDefiningAttributes = Collections.unmodifiableSet(all);
+	}
 	
+	public void addIncomingAttributeName(String attributeName) {
+		incomingAttributeNames.add(attributeName);
+	}
+
+	/**
+	 * @param attributeName name of an attribute of this class
+	 * @return true if the relationships of attributeName point to, rather than from, instances of this class in the graph
+	 */
+	public boolean isIncomingAttribute(String attributeName) {
+		return incomingAttributeNames.contains(attributeName);
+	}
+
 	public String toString() {
 		return "[" + super.toString() + "] " + getName();
 	}
@@ -480,6 +564,13 @@ public class GKSchemaClass implements SchemaClass, Serializable {
 		if (this == schemaClass) {
 			return true;
 		}
+		if (ancestorBits != null && schemaClass instanceof GKSchemaClass) {
+			int index = ((GKSchemaClass) schemaClass).classIndex;
+			// Unless schemaClass belongs to another schema (e.g. one replaced since)
+			if (index >= 0 && index < classTable.length && classTable[index] == schemaClass) {
+				return (ancestorBits[index >>> 6] & (1L << index)) != 0;
+			}
+		}
 		return ancestors.containsValue(schemaClass);
 	}
 	
@@ -504,8 +595,8 @@ public class GKSchemaClass implements SchemaClass, Serializable {
 	 * i.e. either ALL or ANY; null a different defining type or if no defining attributes found
 	 * 
 	 * Rather than finding the appropriate attributes each time from all
-	 * attributes this method caches them in definingAttributes[] the 1st
-	 * time it is called.
+	 * attributes this method returns them from definingAttributes[], as
+	 * compiled with the schema (or cached the 1st time it is called).
 	 */
 	@JsonIgnore
 	public Collection getDefiningAttributes(int defType) {
@@ -536,11 +627,14 @@ public class GKSchemaClass implements SchemaClass, Serializable {
 	 * @return Collection of GKSchemaAttributes which are defining, i.e. with type
 	 * ALL or ANY
 	 * @see #getDefiningAttributes(int)
-	 * Similarly to getDefiningAttributes(int) also this method caches the values
-	 * on definingAttributes[].
+	 * Similarly to getDefiningAttributes(int) this method returns the attributes
+	 * compiled with the schema (an unmodifiable Collection).
 	 */
 	@JsonIgnore
 	public Collection getDefiningAttributes() {
+		if (allDefiningAttributes != null) {
+			return allDefiningAttributes;
+		}
 //		if (definingAttributes == null) {
 //			definingAttributes = new Collection[4];
 //		}
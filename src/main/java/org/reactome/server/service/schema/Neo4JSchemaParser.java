@@ -7,6 +7,7 @@ import org.reactome.server.graph.curator.domain.model.DatabaseObject;
 import org.reactome.server.graph.curator.service.helper.AttributeClass;
 import org.reactome.server.graph.curator.service.helper.AttributeProperties;
 import org.reactome.server.graph.curator.service.util.DatabaseObjectUtils;
+import org.springframework.data.neo4j.core.schema.Relationship;
 
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Field;
@@ -29,6 +30,7 @@ public class Neo4JSchemaParser {
             if (Modifier.isAbstract(clazz.getModifiers()))
                 s.setAbstract(Boolean.TRUE);
             s.setName(className);
+            setIncomingAttributes(s);
             for (String parentName : findParents(className)) {
                 GKSchemaClass parentSC = schemaClassFromCacheOrNew(parentName);
                 parentSC.setName(parentName);
@@ -115,17 +117,7 @@ public class Neo4JSchemaParser {
      */
     private void setCategoryDefiningTypeAllowedClasses(String className, GKSchemaAttribute ska, AttributeProperties ap)
             throws ClassNotFoundException {
-        if (!classNameToFields.containsKey(className)) {
-            String parentClazzName = DatabaseObject.class.getPackage().getName() + "." + className;
-            Class<?> parentClazz = Class.forName(parentClazzName);
-            List<Field> fields = getAllFields(new ArrayList<>(), parentClazz);
-            Map<String, Field> fieldName2Field = new HashMap();
-            for (Field field : fields) {
-                fieldName2Field.put(field.getName(), field);
-            }
-            classNameToFields.put(className, fieldName2Field);
-        }
-        Field field = classNameToFields.get(className).get(ap.getName());
+        Field field = getFields(className).get(ap.getName());
         if (field != null) {
             // Set Constraint Category
             Annotation annotation = field.getAnnotation(ReactomeConstraint.class);
@@ -158,6 +150,36 @@ public class Neo4JSchemaParser {
         }
     }
 
+    /**
+     * Records in schemaClass the attributes whose relationships point to, rather than from, its instances in the graph
+     * (i.e. annotated with @Relationship(direction = INCOMING)), so that queries need not reflect over the class
+     *
+     * @param schemaClass
+     */
+    private void setIncomingAttributes(GKSchemaClass schemaClass) throws ClassNotFoundException {
+        for (Field field : getFields(schemaClass.getName()).values()) {
+            Relationship relationship = field.getAnnotation(Relationship.class);
+            if (relationship != null && relationship.direction() == Relationship.Direction.INCOMING) {
+                schemaClass.addIncomingAttributeName(field.getName());
+            }
+        }
+    }
+
+    // Return field Name -> Field (declared or inherited) in the Java class corresponding to className
+    private Map<String, Field> getFields(String className) throws ClassNotFoundException {
+        if (!classNameToFields.containsKey(className)) {
+            String parentClazzName = DatabaseObject.class.getPackage().getName() + "." + className;
+            Class<?> parentClazz = Class.forName(parentClazzName);
+            List<Field> fields = getAllFields(new ArrayList<>(), parentClazz);
+            Map<String, Field> fieldName2Field = new HashMap();
+            for (Field field : fields) {
+                fieldName2Field.put(field.getName(), field);
+            }
+            classNameToFields.put(className, fieldName2Field);
+        }
+        return classNameToFields.get(className);
+    }
+
     /**
      * Method used to get all fields for given class, event inherited fields
      *
@@ -0,0 +1,113 @@
+package org.reactome.server.service.schema;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.Serializer;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.esotericsoftware.kryo.util.DefaultInstantiatorStrategy;
+import org.objenesis.strategy.StdInstantiatorStrategy;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Kryo-serialized copy of a parsed GKSchema, saved in a directory under the timestamp of the data model (Schema node
+ * in the database). Loading it takes milliseconds, whereas parsing the schema means finding and reflecting over all
+ * domain model classes - so the schema is parsed only when the data model has changed (or its snapshot cannot be read,
+ * e.g. after the schema classes themselves changed, which FORMAT_VERSION should then be increased for).
+ */
+public class SchemaSnapshot {
+    // Increase whenever the fields of GKSchema, GKSchemaClass or GKSchemaAttribute change
+    private static final int FORMAT_VERSION = 2;
+
+    private final File directory;
+
+    public SchemaSnapshot(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * @param timestamp timestamp of the data model in the database
+     * @return the schema saved for timestamp, or null if there is none (or it cannot be read)
+     */
+    public GKSchema load(String timestamp) {
+        if (timestamp == null) {
+            return null;
+        }
+        File file = getFile(timestamp);
+        if (!file.exists()) {
+            return null;
+        }
+        try (Input input = new Input(new FileInputStream(file))) {
+            if (input.readInt() != FORMAT_VERSION || !timestamp.equals(input.readString())) {
+                return null;
+            }
+            GKSchema schema = createKryo().readObject(input, GKSchema.class);
+            // The compiled lookup tables are transient
+            schema.compile();
+            return schema;
+        } catch (Exception e) {
+            // E.g. written by a version of the service with different schema classes - the schema will be re-parsed
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Save schema under its timestamp, unless it has none
+     *
+     * @param schema schema parsed from the domain model classes
+     */
+    public void save(GKSchema schema) {
+        String timestamp = schema.getTimestamp();
+        if (timestamp == null) {
+            return;
+        }
+        try {
+            Files.createDirectories(directory.toPath());
+            // Written to a temporary file first, so that other services sharing directory never read a partial one
+            File tmpFile = File.createTempFile("schema", ".tmp", directory);
+            try (Output output = new Output(new FileOutputStream(tmpFile))) {
+                output.writeInt(FORMAT_VERSION);
+                output.writeString(timestamp);
+                createKryo().writeObject(output, schema);
+            }
+            Files.move(tmpFile.toPath(), getFile(timestamp).toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (Exception e) {
+            // The schema will just be parsed again next time
+            e.printStackTrace();
+        }
+    }
+
+    private File getFile(String timestamp) {
+        return new File(directory, "schema-" + timestamp.replaceAll("[^A-Za-z0-9]", "_") + ".kryo");
+    }
+
+    private Kryo createKryo() {
+        Kryo kryo = new Kryo();
+        kryo.setClassLoader(getClass().getClassLoader());
+        kryo.setRegistrationRequired(false);
+        // Schema classes and attributes refer to each other
+        kryo.setReferences(true);
+        kryo.setInstantiatorStrategy(new DefaultInstantiatorStrategy(new StdInstantiatorStrategy()));
+        // GKSchemaClass.orderedAncestors - a fixed-size list, which cannot be re-built by adding elements
+        kryo.addDefaultSerializer(Arrays.asList().getClass(), new ArraysAsListSerializer());
+        return kryo;
+    }
+
+    private static class ArraysAsListSerializer extends Serializer<List> {
+        @Override
+        public void write(Kryo kryo, Output output, List list) {
+            kryo.writeObject(output, list.toArray());
+        }
+
+        @Override
+        public List read(Kryo kryo, Input input, Class<? extends List> type) {
+            return Arrays.asList(kryo.readObject(input, Object[].class));
+        }
+    }
+}
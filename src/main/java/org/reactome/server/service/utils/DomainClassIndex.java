@@ -0,0 +1,134 @@
+package org.reactome.server.service.utils;
+
+import java.io.*;
+import java.net.JarURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * Names of the (top-level) classes in the domain model package, as listed at build time (by main(), run by the
+ * exec-maven-plugin in the process-classes phase) in the resource: RESOURCE. Reading the resource spares scanning
+ * jars at start-up. If the resource is missing (e.g. when running from an IDE without the Maven build), the package
+ * is scanned through the class loader instead - which, unlike the system Java compiler, is available on a JRE.
+ */
+public class DomainClassIndex {
+    public static final String DOMAIN_MODEL_PACKAGE = "org.reactome.server.graph.curator.domain.model";
+    public static final String RESOURCE = "META-INF/curator-service/domain-classes.idx";
+
+    private static volatile List<String> classNames;
+
+    /**
+     * @return fully qualified names of the classes in DOMAIN_MODEL_PACKAGE, excluding inner classes
+     * @throws IOException if neither the index nor the package could be read
+     */
+    public static List<String> getClassNames() throws IOException {
+        List<String> ret = classNames;
+        if (ret == null) {
+            ClassLoader classLoader = DomainClassIndex.class.getClassLoader();
+            ret = readIndex(classLoader);
+            if (ret == null) {
+                ret = scan(classLoader, DOMAIN_MODEL_PACKAGE);
+            }
+            classNames = ret = Collections.unmodifiableList(ret);
+        }
+        return ret;
+    }
+
+    /**
+     * @return simple names of the classes in DOMAIN_MODEL_PACKAGE, excluding inner classes
+     * @throws IOException if neither the index nor the package could be read
+     */
+    public static List<String> getSimpleClassNames() throws IOException {
+        List<String> simpleNames = new ArrayList<>();
+        for (String className : getClassNames()) {
+            simpleNames.add(className.substring(className.lastIndexOf('.') + 1));
+        }
+        return simpleNames;
+    }
+
+    // Return the class names listed in RESOURCE, or null if there is no such resource
+    private static List<String> readIndex(ClassLoader classLoader) throws IOException {
+        InputStream in = classLoader.getResourceAsStream(RESOURCE);
+        if (in == null) {
+            return null;
+        }
+        List<String> ret = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (!line.isEmpty() && !line.startsWith("#")) {
+                    ret.add(line);
+                }
+            }
+        }
+        return ret;
+    }
+
+    // Return the names of the top-level classes in pack, in all class path entries (directories and jars)
+    private static List<String> scan(ClassLoader classLoader, String pack) throws IOException {
+        String path = pack.replace('.', '/');
+        Set<String> ret = new TreeSet<>();
+        Enumeration<URL> urls = classLoader.getResources(path);
+        while (urls.hasMoreElements()) {
+            URL url = urls.nextElement();
+            URLConnection connection = url.openConnection();
+            if (connection instanceof JarURLConnection) {
+                connection.setUseCaches(false);
+                try (JarFile jarFile = ((JarURLConnection) connection).getJarFile()) {
+                    for (Enumeration<JarEntry> entries = jarFile.entries(); entries.hasMoreElements(); ) {
+                        String name = entries.nextElement().getName();
+                        if (name.startsWith(path + "/")) {
+                            addClassName(ret, pack, name.substring(path.length() + 1));
+                        }
+                    }
+                }
+            } else if (url.getProtocol().equals("file")) {
+                File[] files = new File(URLDecoder.decode(url.getPath(), "UTF-8")).listFiles();
+                if (files != null) {
+                    for (File file : files) {
+                        addClassName(ret, pack, file.getName());
+                    }
+                }
+            }
+        }
+        return new ArrayList<>(ret);
+    }
+
+    // Add to classNames the name of the class in file fileName of package pack - unless it is not a class file,
+    // is in a sub-package, or is an inner class
+    private static void addClassName(Set<String> classNames, String pack, String fileName) {
+        if (fileName.endsWith(".class") && fileName.indexOf('/') == -1 && fileName.indexOf('$') == -1) {
+            classNames.add(pack + "." + fileName.substring(0, fileName.length() - ".class".length()));
+        }
+    }
+
+    /**
+     * Write the index: the names of the classes in DOMAIN_MODEL_PACKAGE found on the class path, one per line
+     *
+     * @param args directory of the compiled classes, in which RESOURCE is written
+     * @throws IOException if the class path cannot be scanned or the index cannot be written
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            throw new IllegalArgumentException("Usage: DomainClassIndex <output directory>");
+        }
+        List<String> names = scan(DomainClassIndex.class.getClassLoader(), DOMAIN_MODEL_PACKAGE);
+        if (names.isEmpty()) {
+            throw new IOException("No classes found in " + DOMAIN_MODEL_PACKAGE + " - is it on the class path?");
+        }
+        File file = new File(args[0], RESOURCE);
+        Files.createDirectories(file.getParentFile().toPath());
+        List<String> lines = new ArrayList<>();
+        lines.add("# Classes in " + DOMAIN_MODEL_PACKAGE + " - generated by " + DomainClassIndex.class.getName());
+        lines.addAll(names);
+        Files.write(file.toPath(), lines, StandardCharsets.UTF_8);
+        System.out.println("Wrote " + names.size() + " class names to " + file);
+    }
+}
@@ -0,0 +1,169 @@
+package org.reactome.server.service.model;
+
+import org.junit.jupiter.api.Test;
+import org.neo4j.driver.Value;
+import org.neo4j.driver.Values;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AttributeValueCacheTest {
+
+    @Test
+    public void instanceValues() throws Exception {
+        AttributeValueCache cache = new AttributeValueCache();
+        cache.load("Pathway", "hasEvent", builder -> {
+            builder.addInstanceValue(30L, Values.value(301L), "Reaction");
+            builder.addInstanceValue(10L, Values.value(101L), "Pathway");
+            builder.addInstanceValue(30L, Values.value(302L), "BlackBoxEvent");
+            builder.addInstanceValue(30L, Values.value(303L), "Reaction");
+        });
+        assertTrue(cache.inCacheAlready("Pathway", "hasEvent"));
+        assertFalse(cache.inCacheAlready("Pathway", "name"));
+        // In the order in which they were added
+        assertRecords(cache.getValues("Pathway", "hasEvent", 30L),
+                Values.value(301L), "Reaction", Values.value(302L), "BlackBoxEvent", Values.value(303L), "Reaction");
+        assertRecords(cache.getValues("Pathway", "hasEvent", 10L), Values.value(101L), "Pathway");
+        assertNull(cache.getValues("Pathway", "hasEvent", 20L));
+        assertNull(cache.getValues("Pathway", "name", 30L));
+    }
+
+    @Test
+    public void primitiveValues() throws Exception {
+        AttributeValueCache cache = new AttributeValueCache();
+        cache.load("Pathway", "name", builder -> {
+            builder.addPrimitiveValue(1L, Values.value("apoptosis"));
+            builder.addPrimitiveValue(1L, Values.value("programmed cell death"));
+        });
+        cache.load("Pathway", "releaseStatus", builder -> builder.addPrimitiveValue(1L, Values.value(3L)));
+        cache.load("Pathway", "score", builder -> builder.addPrimitiveValue(1L, Values.value(0.5)));
+        cache.load("Pathway", "isInDisease", builder -> {
+            builder.addPrimitiveValue(1L, Values.value(true));
+            builder.addPrimitiveValue(2L, Values.value(false));
+        });
+        cache.load("Pathway", "list", builder -> builder.addPrimitiveValue(1L, Values.value(Arrays.asList("a", "b"))));
+        assertRecords(cache.getValues("Pathway", "name", 1L),
+                Values.value("apoptosis"), null, Values.value("programmed cell death"), null);
+        assertRecords(cache.getValues("Pathway", "releaseStatus", 1L), Values.value(3L), null);
+        assertRecords(cache.getValues("Pathway", "score", 1L), Values.value(0.5), null);
+        assertRecords(cache.getValues("Pathway", "isInDisease", 1L), Values.value(true), null);
+        assertRecords(cache.getValues("Pathway", "isInDisease", 2L), Values.value(false), null);
+        assertRecords(cache.getValues("Pathway", "list", 1L), Values.value(Arrays.asList("a", "b")), null);
+        assertEquals(new HashSet<>(Arrays.asList("name", "releaseStatus", "score", "isInDisease", "list")),
+                cache.getAttributeNames("Pathway"));
+    }
+
+    @Test
+    public void mixedValuesKeepSchemaClasses() throws Exception {
+        AttributeValueCache cache = new AttributeValueCache();
+        // Instances first, then values of other types
+        cache.load("Pathway", "mixed", builder -> {
+            builder.addInstanceValue(2L, Values.value(201L), "Reaction");
+            builder.addInstanceValue(1L, Values.value(101L), "Pathway");
+            builder.addPrimitiveValue(2L, Values.value("x"));
+            builder.addInstanceValue(2L, Values.value(202L), "Pathway");
+            builder.addPrimitiveValue(1L, Values.value(7L));
+        });
+        assertRecords(cache.getValues("Pathway", "mixed", 1L),
+                Values.value(101L), "Pathway", Values.value(7L), null);
+        assertRecords(cache.getValues("Pathway", "mixed", 2L),
+                Values.value(201L), "Reaction", Values.value("x"), null, Values.value(202L), "Pathway");
+        // Values of other types first, then instances
+        cache.load("Pathway", "mixedToo", builder -> {
+            builder.addPrimitiveValue(1L, Values.value(1.5));
+            builder.addPrimitiveValue(1L, Values.value("y"));
+            builder.addInstanceValue(1L, Values.value(102L), "Reaction");
+        });
+        assertRecords(cache.getValues("Pathway", "mixedToo", 1L),
+                Values.value(1.5), null, Values.value("y"), null, Values.value(102L), "Reaction");
+    }
+
+    @Test
+    public void manyOwnersAgainstMap() throws Exception {
+        AttributeValueCache cache = new AttributeValueCache();
+        Map<Long, List<Object>> expected = new HashMap<>();
+        Random random = new Random(42);
+        String[] schemaClasses = {"Pathway", "Reaction", "BlackBoxEvent"};
+        cache.load("Pathway", "hasEvent", builder -> {
+            for (int i = 0; i < 20000; i++) {
+                long dbId = random.nextInt(3000) - 1000;
+                Value value = Values.value((long) random.nextInt(1000000));
+                String schemaClass = schemaClasses[random.nextInt(schemaClasses.length)];
+                builder.addInstanceValue(dbId, value, schemaClass);
+                List<Object> records = expected.computeIfAbsent(dbId, k -> new ArrayList<>());
+                records.add(value);
+                records.add(schemaClass);
+            }
+        });
+        for (long dbId = -1000; dbId < 2000; dbId++) {
+            List<Object> records = expected.get(dbId);
+            if (records == null) {
+                assertNull(cache.getValues("Pathway", "hasEvent", dbId));
+            } else {
+                assertRecords(cache.getValues("Pathway", "hasEvent", dbId), records.toArray());
+            }
+        }
+    }
+
+    @Test
+    public void refreshReplacesValuesOfGivenInstances() throws Exception {
+        AttributeValueCache cache = new AttributeValueCache();
+        cache.load("Pathway", "hasEvent", builder -> {
+            builder.addInstanceValue(1L, Values.value(101L), "Reaction");
+            builder.addInstanceValue(2L, Values.value(201L), "Reaction");
+            builder.addInstanceValue(2L, Values.value(202L), "Pathway");
+            builder.addInstanceValue(3L, Values.value(301L), "Pathway");
+        });
+        cache.refresh("Pathway", "hasEvent", Arrays.asList(2L, 4L), builder -> {
+            builder.addInstanceValue(2L, Values.value(203L), "BlackBoxEvent");
+            builder.addInstanceValue(4L, Values.value(401L), "Reaction");
+        });
+        assertRecords(cache.getValues("Pathway", "hasEvent", 1L), Values.value(101L), "Reaction");
+        assertRecords(cache.getValues("Pathway", "hasEvent", 2L), Values.value(203L), "BlackBoxEvent");
+        assertRecords(cache.getValues("Pathway", "hasEvent", 3L), Values.value(301L), "Pathway");
+        assertRecords(cache.getValues("Pathway", "hasEvent", 4L), Values.value(401L), "Reaction");
+        // Of mixed types: schema classes of the instances kept are carried over too
+        cache.refresh("Pathway", "hasEvent", Collections.singletonList(3L),
+                builder -> builder.addPrimitiveValue(3L, Values.value("x")));
+        assertRecords(cache.getValues("Pathway", "hasEvent", 1L), Values.value(101L), "Reaction");
+        assertRecords(cache.getValues("Pathway", "hasEvent", 3L), Values.value("x"), null);
+        cache.refresh("Pathway", "hasEvent", Collections.singletonList(3L), builder -> { });
+        assertRecords(cache.getValues("Pathway", "hasEvent", 2L), Values.value(203L), "BlackBoxEvent");
+        assertNull(cache.getValues("Pathway", "hasEvent", 3L));
+        // Nothing is done for values not in the cache
+        cache.refresh("Pathway", "name", Collections.singletonList(1L), builder -> fail("not to be loaded"));
+        assertFalse(cache.inCacheAlready("Pathway", "name"));
+    }
+
+    @Test
+    public void failedLoadIsRetried() throws Exception {
+        AttributeValueCache cache = new AttributeValueCache();
+        try {
+            cache.load("Pathway", "name", builder -> {
+                builder.addPrimitiveValue(1L, Values.value("partial"));
+                throw new IllegalStateException("failed");
+            });
+            fail("expected an exception");
+        } catch (IllegalStateException e) {
+            assertEquals("failed", e.getMessage());
+        }
+        assertFalse(cache.inCacheAlready("Pathway", "name"));
+        cache.load("Pathway", "name", builder -> builder.addPrimitiveValue(1L, Values.value("apoptosis")));
+        assertRecords(cache.getValues("Pathway", "name", 1L), Values.value("apoptosis"), null);
+        // Loaded once only
+        cache.load("Pathway", "name", builder -> fail("loaded again"));
+        cache.invalidate("Pathway");
+        assertFalse(cache.inCacheAlready("Pathway", "name"));
+    }
+
+    // expected: value, schema class (null for values other than instances), value, schema class...
+    private static void assertRecords(List<AttributeValueCache.AttValCacheRecord> records, Object... expected) {
+        assertNotNull(records);
+        assertEquals(expected.length / 2, records.size());
+        for (int i = 0; i < records.size(); i++) {
+            assertEquals(expected[2 * i], records.get(i).getValue(), "value " + i);
+            assertEquals(expected[2 * i + 1], records.get(i).getSchemaClass(), "schema class " + i);
+        }
+    }
+}
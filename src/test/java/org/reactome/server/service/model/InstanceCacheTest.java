@@ -0,0 +1,239 @@
+package org.reactome.server.service.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class InstanceCacheTest {
+
+    @Test
+    public void putGetRemoveCollidingKeysWrappingAround() {
+        InstanceCache cache = new InstanceCache();
+        // All in the last slot of the same stripe (of initial capacity 16), so that probing wraps around to slot 0
+        List<Long> dbIds = collidingDbIds(10, 15);
+        Map<Long, Instance> expected = new HashMap<>();
+        for (Long dbId : dbIds) {
+            GKInstance instance = instance(dbId, 0);
+            assertNull(cache.put(dbId, instance));
+            expected.put(dbId, instance);
+            assertContents(expected, cache);
+        }
+        // Remove from the start, the middle and the end of the probe sequence - entries after each must be shifted back
+        for (int index : new int[]{0, 4, 8, 1, 5}) {
+            Long dbId = dbIds.get(index);
+            assertSame(expected.remove(dbId), cache.remove(dbId));
+            assertNull(cache.get(dbId));
+            assertContents(expected, cache);
+        }
+        assertNull(cache.remove(dbIds.get(0)));
+        // Re-insert into the gaps
+        for (int index : new int[]{4, 0}) {
+            Long dbId = dbIds.get(index);
+            GKInstance instance = instance(dbId, 0);
+            cache.put(dbId, instance);
+            expected.put(dbId, instance);
+            assertContents(expected, cache);
+        }
+    }
+
+    @Test
+    public void putReplacesInstance() {
+        InstanceCache cache = new InstanceCache();
+        GKInstance first = instance(1L, 0);
+        GKInstance second = instance(1L, 3);
+        cache.put(1L, first);
+        assertSame(first, cache.put(1L, second));
+        assertSame(second, cache.get(1L));
+        assertEquals(1, cache.size());
+        // One per instance, plus one per attribute: DB_ID and 3 others
+        assertEquals(5, cache.getWeight());
+    }
+
+    @Test
+    public void resize() {
+        InstanceCache cache = new InstanceCache();
+        // Enough colliding DB_IDs to resize their stripe several times, plus random ones across all stripes
+        Map<Long, Instance> expected = new HashMap<>();
+        for (Long dbId : collidingDbIds(100, 3)) {
+            GKInstance instance = instance(dbId, 1);
+            cache.put(dbId, instance);
+            expected.put(dbId, instance);
+        }
+        Random random = new Random(17);
+        for (int i = 0; i < 20000; i++) {
+            long dbId = random.nextInt(1000000);
+            GKInstance instance = instance(dbId, random.nextInt(3));
+            cache.put(dbId, instance);
+            expected.put(dbId, instance);
+        }
+        assertContents(expected, cache);
+    }
+
+    @Test
+    public void randomOperationsAgainstMap() {
+        InstanceCache cache = new InstanceCache();
+        Map<Long, Instance> expected = new HashMap<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 200000; i++) {
+            long dbId = random.nextInt(5000);
+            int op = random.nextInt(3);
+            if (op == 0) {
+                GKInstance instance = instance(dbId, random.nextInt(4));
+                assertSame(expected.put(dbId, instance), cache.put(dbId, instance));
+            } else if (op == 1) {
+                assertSame(expected.remove(dbId), cache.remove(dbId));
+            } else {
+                assertSame(expected.get(dbId), cache.get(dbId));
+            }
+        }
+        assertContents(expected, cache);
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getWeight());
+    }
+
+    @Test
+    public void evictionSkipsPinnedAndDirtyInstances() {
+        InstanceCache cache = new InstanceCache();
+        cache.setMaxSize(100);
+        Set<Long> pinned = new HashSet<>();
+        for (long dbId = 1; dbId <= 1000; dbId++) {
+            GKInstance instance = instance(dbId, 1);
+            if (dbId % 20 == 0) {
+                instance.setIsDirty(true);
+                pinned.add(dbId);
+            }
+            cache.put(dbId, instance);
+            if (dbId % 20 == 10) {
+                cache.pin(dbId, () -> true);
+                pinned.add(dbId);
+            }
+        }
+        for (Long dbId : pinned) {
+            assertNotNull(cache.get(dbId));
+        }
+        assertTrue(cache.size() <= 100, "size " + cache.size());
+        assertTrue(cache.getEvictionCount() >= 900);
+        assertConsistent(cache);
+    }
+
+    @Test
+    public void evictionStopsWhenAllPinned() {
+        InstanceCache cache = new InstanceCache();
+        cache.setMaxSize(10);
+        for (long dbId = 1; dbId <= 50; dbId++) {
+            GKInstance instance = instance(dbId, 0);
+            instance.setIsDirty(true);
+            cache.put(dbId, instance);
+        }
+        // Nothing can be evicted: the cache goes over its bound
+        assertEquals(50, cache.size());
+        assertEquals(0, cache.getEvictionCount());
+        // Once no longer dirty, instances are evicted again - when the cache has grown by another eighth
+        for (Instance instance : cache.values()) {
+            ((GKInstance) instance).setIsDirty(false);
+        }
+        long dbId = 51;
+        while (cache.getEvictionCount() == 0) {
+            cache.put(dbId, instance(dbId, 0));
+            dbId++;
+        }
+        assertTrue(dbId - 51 <= 50 / 8 + 1, "puts " + (dbId - 51));
+        assertTrue(cache.size() <= 10, "size " + cache.size());
+        assertConsistent(cache);
+    }
+
+    @Test
+    public void evictionRetriedWhenBoundsChange() {
+        InstanceCache cache = new InstanceCache();
+        cache.setMaxSize(10);
+        List<GKInstance> instances = new ArrayList<>();
+        for (long dbId = 1; dbId <= 50; dbId++) {
+            GKInstance instance = instance(dbId, 0);
+            instance.setIsDirty(true);
+            cache.put(dbId, instance);
+            instances.add(instance);
+        }
+        for (GKInstance instance : instances) {
+            instance.setIsDirty(false);
+        }
+        // Not swept again on the next put
+        cache.put(51L, instance(51L, 0));
+        assertEquals(51, cache.size());
+        assertEquals(0, cache.getEvictionCount());
+        // But at once when the bounds are set
+        cache.setMaxSize(20);
+        assertTrue(cache.size() <= 20, "size " + cache.size());
+        assertConsistent(cache);
+    }
+
+    @Test
+    public void evictionByWeight() {
+        InstanceCache cache = new InstanceCache();
+        cache.setMaxWeight(1000);
+        for (long dbId = 1; dbId <= 1000; dbId++) {
+            cache.put(dbId, instance(dbId, 9));
+        }
+        assertTrue(cache.getWeight() <= 1000, "weight " + cache.getWeight());
+        assertConsistent(cache);
+    }
+
+    @Test
+    public void weightFollowsInflation() {
+        InstanceCache cache = new InstanceCache();
+        GKInstance instance = instance(7L, 0);
+        cache.put(7L, instance);
+        // One per instance, plus one for attribute DB_ID
+        assertEquals(2, cache.getWeight());
+        instance.setAttributeValueNoCheck("name", "x");
+        // Re-weighed when next got
+        cache.get(7L);
+        assertEquals(3, cache.getWeight());
+        cache.remove(7L);
+        assertEquals(0, cache.getWeight());
+    }
+
+    // DB_IDs which fall into slot of the same stripe of InstanceCache, while the stripe has its initial capacity (16)
+    private static List<Long> collidingDbIds(int count, int slot) {
+        List<Long> dbIds = new ArrayList<>();
+        long stripe = InstanceCache.mix(1) >>> 58;
+        for (long dbId = 1; dbIds.size() < count; dbId++) {
+            long mixed = InstanceCache.mix(dbId);
+            if (mixed >>> 58 == stripe && ((int) mixed & 15) == slot) {
+                dbIds.add(dbId);
+            }
+        }
+        return dbIds;
+    }
+
+    private static GKInstance instance(long dbId, int attributeCount) {
+        GKInstance instance = new GKInstance();
+        instance.setDBID(dbId);
+        for (int i = 0; i < attributeCount; i++) {
+            instance.setAttributeValueNoCheck("attribute" + i, "value" + i);
+        }
+        return instance;
+    }
+
+    private static void assertContents(Map<Long, Instance> expected, InstanceCache cache) {
+        for (Map.Entry<Long, Instance> entry : expected.entrySet()) {
+            assertSame(entry.getValue(), cache.get(entry.getKey()), "DB_ID " + entry.getKey());
+            assertTrue(cache.containsKey(entry.getKey()));
+        }
+        assertEquals(expected.keySet(), cache.keySet());
+        assertConsistent(cache);
+    }
+
+    // size() and getWeight() must match the instances in the cache
+    private static void assertConsistent(InstanceCache cache) {
+        Collection<Instance> values = cache.values();
+        assertEquals(values.size(), cache.size());
+        long weight = 0;
+        for (Instance instance : values) {
+            weight += 1 + ((GKInstance) instance).getAttributes().size();
+        }
+        assertEquals(weight, cache.getWeight());
+    }
+}
@@ -0,0 +1,243 @@
+package org.reactome.server.service.persistence;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DbIdBitmapTest {
+    private static final long CHUNK = 1L << 16;
+
+    @Test
+    public void arrayToBitmapAndBack() {
+        DbIdBitmap bitmap = new DbIdBitmap();
+        TreeSet<Long> expected = new TreeSet<>();
+        long base = 5 * CHUNK;
+        // Every other value, so that the chunk holds 4096 values as an array, then 4097 as a bitmap
+        for (int i = 0; i < 4096; i++) {
+            assertTrue(bitmap.add(base + 2 * i));
+            expected.add(base + 2 * i);
+        }
+        assertFalse(bitmap.add(base));
+        assertContents(expected, bitmap);
+        assertTrue(bitmap.add(base + 1));
+        expected.add(base + 1);
+        assertContents(expected, bitmap);
+        // Values added to and removed from the bitmap on either side of the conversion
+        assertTrue(bitmap.add(base + 8191));
+        expected.add(base + 8191);
+        assertTrue(bitmap.remove(base + 2));
+        expected.remove(base + 2);
+        assertContents(expected, bitmap);
+        // Back to an array (of exactly its cardinality) once at most 4096 values are left
+        while (expected.size() > 4096) {
+            Long dbId = expected.pollLast();
+            assertTrue(bitmap.remove(dbId));
+            assertContents(expected, bitmap);
+        }
+        assertFalse(bitmap.remove(base + 2));
+        assertEquals(16 + 2 * 4096, bitmap.getSizeInBytes());
+        // And to a bitmap again
+        assertTrue(bitmap.add(base + 3));
+        expected.add(base + 3);
+        assertContents(expected, bitmap);
+        assertEquals(16 + 8 * 1024, bitmap.getSizeInBytes());
+        for (Long dbId : new ArrayList<>(expected)) {
+            if (dbId % 3 != 0) {
+                assertTrue(bitmap.remove(dbId));
+                expected.remove(dbId);
+            }
+        }
+        assertContents(expected, bitmap);
+        // An array again, which does not shrink as values are removed
+        assertEquals(16 + 2 * 4096, bitmap.getSizeInBytes());
+    }
+
+    @Test
+    public void andAndNotAcrossContainerTypes() {
+        // Chunk 0: array and array, chunk 1: array and bitmap, chunk 2: bitmap and array, chunk 3: bitmap and bitmap,
+        // chunk 4: in the left operand only, chunk 5: in the right operand only
+        TreeSet<Long> left = new TreeSet<>();
+        TreeSet<Long> right = new TreeSet<>();
+        addEvery(left, 0, 3, 1000);
+        addEvery(right, 0, 5, 1000);
+        addEvery(left, 1, 7, 1000);
+        addEvery(right, 1, 2, 6000);
+        addEvery(left, 2, 3, 5000);
+        addEvery(right, 2, 11, 500);
+        addEvery(left, 3, 2, 8000);
+        addEvery(right, 3, 3, 8000);
+        addEvery(left, 4, 1, 100);
+        addEvery(right, 5, 1, 100);
+        DbIdBitmap leftBitmap = DbIdBitmap.of(left);
+        DbIdBitmap rightBitmap = DbIdBitmap.of(right);
+
+        TreeSet<Long> and = new TreeSet<>(left);
+        and.retainAll(right);
+        assertContents(and, leftBitmap.and(rightBitmap));
+        assertContents(and, rightBitmap.and(leftBitmap));
+
+        TreeSet<Long> leftAndNot = new TreeSet<>(left);
+        leftAndNot.removeAll(right);
+        assertContents(leftAndNot, leftBitmap.andNot(rightBitmap));
+        TreeSet<Long> rightAndNot = new TreeSet<>(right);
+        rightAndNot.removeAll(left);
+        assertContents(rightAndNot, rightBitmap.andNot(leftBitmap));
+
+        // The operands are left unchanged
+        assertContents(left, leftBitmap);
+        assertContents(right, rightBitmap);
+        // Chunks with nothing left are dropped
+        assertTrue(leftBitmap.andNot(leftBitmap).isEmpty());
+        assertTrue(leftBitmap.and(new DbIdBitmap()).isEmpty());
+        assertContents(left, leftBitmap.andNot(new DbIdBitmap()));
+    }
+
+    @Test
+    public void toRangesAcrossChunkBoundaries() {
+        TreeSet<Long> expected = new TreeSet<>();
+        // Ranges ending on, starting on and spanning chunk boundaries, including between negative and positive DB_IDs
+        addRange(expected, -3, 2);
+        addRange(expected, CHUNK - 10, CHUNK - 1);
+        addRange(expected, 2 * CHUNK, 2 * CHUNK + 5);
+        addRange(expected, 3 * CHUNK - 3, 5 * CHUNK + 2);
+        expected.add(7 * CHUNK + 1);
+        expected.add(7 * CHUNK + 3);
+        DbIdBitmap bitmap = DbIdBitmap.of(expected);
+        assertContents(expected, bitmap);
+        List<long[]> ranges = bitmap.toRanges();
+        assertEquals(ranges(expected), toList(ranges));
+        assertEquals(Arrays.asList(-3L, 2L), toList(ranges.get(0)));
+        assertEquals(Arrays.asList(3 * CHUNK - 3, 5 * CHUNK + 2), toList(ranges.get(3)));
+        assertTrue(new DbIdBitmap().toRanges().isEmpty());
+    }
+
+    @Test
+    public void removeEmptiesChunk() {
+        TreeSet<Long> expected = new TreeSet<>();
+        addEvery(expected, 0, 1, 10);
+        addEvery(expected, 1, 1, 5000);
+        addEvery(expected, 2, 1, 10);
+        DbIdBitmap bitmap = DbIdBitmap.of(expected);
+        long sizeInBytes = bitmap.getSizeInBytes();
+        // The middle chunk, a bitmap then an array, emptied
+        for (long dbId = CHUNK; dbId < CHUNK + 5000; dbId++) {
+            assertTrue(bitmap.remove(dbId));
+            expected.remove(dbId);
+        }
+        assertContents(expected, bitmap);
+        assertFalse(bitmap.contains(CHUNK));
+        assertTrue(bitmap.getSizeInBytes() < sizeInBytes);
+        // As if it had only ever held the values of the other chunks
+        assertEquals(DbIdBitmap.of(expected).getSizeInBytes(), bitmap.getSizeInBytes());
+        // Re-added after being emptied
+        assertTrue(bitmap.add(CHUNK + 1));
+        expected.add(CHUNK + 1);
+        assertContents(expected, bitmap);
+        // The remaining chunks emptied
+        for (Long dbId : new ArrayList<>(expected)) {
+            assertTrue(bitmap.remove(dbId));
+            expected.remove(dbId);
+            assertContents(expected, bitmap);
+        }
+        assertTrue(bitmap.isEmpty());
+        assertEquals(0, bitmap.getSizeInBytes());
+    }
+
+    @Test
+    public void randomOperationsAgainstTreeSet() {
+        DbIdBitmap bitmap = new DbIdBitmap();
+        TreeSet<Long> expected = new TreeSet<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 200000; i++) {
+            // Dense enough in some chunks for them to switch between array and bitmap
+            long dbId = random.nextBoolean() ? random.nextInt(3 * (int) CHUNK) : random.nextInt(12000);
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(dbId), bitmap.remove(dbId));
+            } else {
+                assertEquals(expected.add(dbId), bitmap.add(dbId));
+            }
+            if (i % 20000 == 0) {
+                assertContents(expected, bitmap);
+            }
+        }
+        assertContents(expected, bitmap);
+        DbIdBitmap other = new DbIdBitmap();
+        TreeSet<Long> otherExpected = new TreeSet<>();
+        for (int i = 0; i < 50000; i++) {
+            long dbId = random.nextInt(4 * (int) CHUNK);
+            other.add(dbId);
+            otherExpected.add(dbId);
+        }
+        TreeSet<Long> and = new TreeSet<>(expected);
+        and.retainAll(otherExpected);
+        assertContents(and, bitmap.and(other));
+        TreeSet<Long> andNot = new TreeSet<>(expected);
+        andNot.removeAll(otherExpected);
+        assertContents(andNot, bitmap.andNot(other));
+    }
+
+    private static void addEvery(Set<Long> dbIds, long chunk, int step, int count) {
+        for (int i = 0; i < count; i++) {
+            dbIds.add(chunk * CHUNK + (long) i * step);
+        }
+    }
+
+    private static void addRange(Set<Long> dbIds, long first, long last) {
+        for (long dbId = first; dbId <= last; dbId++) {
+            dbIds.add(dbId);
+        }
+    }
+
+    // The runs of consecutive DB_IDs in dbIds, as [first, last] pairs
+    private static List<List<Long>> ranges(TreeSet<Long> dbIds) {
+        List<List<Long>> ranges = new ArrayList<>();
+        Long first = null;
+        Long last = null;
+        for (Long dbId : dbIds) {
+            if (last != null && dbId == last + 1) {
+                last = dbId;
+                continue;
+            }
+            if (first != null) {
+                ranges.add(Arrays.asList(first, last));
+            }
+            first = last = dbId;
+        }
+        if (first != null) {
+            ranges.add(Arrays.asList(first, last));
+        }
+        return ranges;
+    }
+
+    private static List<List<Long>> toList(List<long[]> ranges) {
+        List<List<Long>> list = new ArrayList<>();
+        for (long[] range : ranges) {
+            list.add(toList(range));
+        }
+        return list;
+    }
+
+    private static List<Long> toList(long[] range) {
+        return Arrays.asList(range[0], range[1]);
+    }
+
+    private static void assertContents(TreeSet<Long> expected, DbIdBitmap bitmap) {
+        assertEquals(expected.size(), bitmap.getCardinality());
+        assertEquals(expected.isEmpty(), bitmap.isEmpty());
+        // In ascending order
+        assertEquals(new ArrayList<>(expected), new ArrayList<>(bitmap.toSet()));
+        List<Long> forEach = new ArrayList<>();
+        bitmap.forEach(forEach::add);
+        assertEquals(new ArrayList<>(expected), forEach);
+        for (Long dbId : expected) {
+            assertTrue(bitmap.contains(dbId), "DB_ID " + dbId);
+        }
+        if (!expected.isEmpty()) {
+            assertFalse(bitmap.contains(expected.first() - 1));
+            assertFalse(bitmap.contains(expected.last() + 1));
+        }
+        assertEquals(ranges(expected), toList(bitmap.toRanges()));
+    }
+}
@@ -0,0 +1,112 @@
+package org.reactome.server.service.persistence;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class Neo4JAdaptorTest {
+
+    @Test
+    public void relationshipRowsCompressDuplicates() {
+        List<Map<String, Object>> rels = Neo4JAdaptor.getRelationshipRows(Arrays.asList(30L, 10L, 30L, 20L, 30L, 10L));
+        assertEquals(Arrays.asList(row(30L, 3L, 0), row(10L, 2L, 1), row(20L, 1L, 2)), rels);
+        assertTrue(Neo4JAdaptor.getRelationshipRows(Collections.emptyList()).isEmpty());
+    }
+
+    @Test
+    public void diffUnchangedRelationships() {
+        List<Map<String, Object>> rels = Neo4JAdaptor.getRelationshipRows(Arrays.asList(1L, 2L, 2L));
+        // As returned by the database: stoichiometry and order may come back as any kind of number
+        List<Map<String, Object>> storedRels = Arrays.asList(stored(100L, 2L, 2, 1L), stored(101L, 1L, 1L, 0));
+        Diff diff = new Diff("hasComponent", rels, storedRels);
+        assertTrue(diff.deleteRels.isEmpty());
+        assertTrue(diff.updateRels.isEmpty());
+        assertTrue(diff.createRels.isEmpty());
+    }
+
+    @Test
+    public void diffChangedRelationships() {
+        // 1: re-ordered, 2: stoichiometry changed, 3: removed, 4: added, 5: unchanged
+        List<Map<String, Object>> rels = Neo4JAdaptor.getRelationshipRows(Arrays.asList(2L, 1L, 2L, 4L, 5L));
+        List<Map<String, Object>> storedRels = Arrays.asList(
+                stored(101L, 1L, 1L, 0L), stored(102L, 2L, 1L, 1L), stored(103L, 3L, 1L, 2L), stored(105L, 5L, 1L, 3L));
+        Diff diff = new Diff("hasComponent", rels, storedRels);
+        assertEquals(Collections.singletonList(103L), diff.deleteRels);
+        Map<String, Object> update1 = row(1L, 1L, 1);
+        update1.put("id", 101L);
+        Map<String, Object> update2 = row(2L, 2L, 0);
+        update2.put("id", 102L);
+        assertEquals(Arrays.asList(update2, update1), diff.updateRels);
+        Map<String, Object> create4 = row(4L, 1L, 2);
+        create4.put("type", "hasComponent");
+        assertEquals(Collections.singletonList(create4), diff.createRels);
+    }
+
+    @Test
+    public void diffReplacesDuplicateStoredRelationships() {
+        List<Map<String, Object>> rels = Neo4JAdaptor.getRelationshipRows(Arrays.asList(1L, 1L, 2L));
+        // Two relationships to the same value, e.g. as stored by an older version
+        List<Map<String, Object>> storedRels = Arrays.asList(
+                stored(101L, 1L, 1L, 0L), stored(102L, 1L, 1L, 0L), stored(103L, 2L, 1L, 1L));
+        Diff diff = new Diff("hasComponent", rels, storedRels);
+        assertEquals(Arrays.asList(101L, 102L, 103L), diff.deleteRels);
+        assertTrue(diff.updateRels.isEmpty());
+        List<Map<String, Object>> createRels = new ArrayList<>();
+        for (Map<String, Object> rel : rels) {
+            Map<String, Object> createRel = new HashMap<>(rel);
+            createRel.put("type", "hasComponent");
+            createRels.add(createRel);
+        }
+        assertEquals(createRels, diff.createRels);
+    }
+
+    @Test
+    public void diffAllRemovedOrAdded() {
+        List<Map<String, Object>> storedRels = Arrays.asList(stored(101L, 1L, 1L, 0L), stored(102L, 2L, 1L, 1L));
+        Diff diff = new Diff("hasEvent", Collections.emptyList(), storedRels);
+        assertEquals(Arrays.asList(101L, 102L), sorted(diff.deleteRels));
+        assertTrue(diff.createRels.isEmpty());
+        diff = new Diff("hasEvent", Neo4JAdaptor.getRelationshipRows(Arrays.asList(1L, 2L)), Collections.emptyList());
+        assertTrue(diff.deleteRels.isEmpty());
+        assertEquals(2, diff.createRels.size());
+        for (Map<String, Object> createRel : diff.createRels) {
+            assertEquals("hasEvent", createRel.get("type"));
+        }
+    }
+
+    private static class Diff {
+        private final List<Long> deleteRels = new ArrayList<>();
+        private final List<Map<String, Object>> updateRels = new ArrayList<>();
+        private final List<Map<String, Object>> createRels = new ArrayList<>();
+
+        Diff(String attName, List<Map<String, Object>> rels, List<Map<String, Object>> storedRels) {
+            Neo4JAdaptor.diffRelationships(attName, rels, storedRels, deleteRels, updateRels, createRels);
+        }
+    }
+
+    private static Map<String, Object> row(long dbId, long stoichiometry, int order) {
+        Map<String, Object> row = new HashMap<>();
+        row.put("dbId", dbId);
+        row.put("stoichiometry", stoichiometry);
+        row.put("order", order);
+        return row;
+    }
+
+    private static Map<String, Object> stored(long id, long dbId, Object stoichiometry, Object order) {
+        Map<String, Object> rel = new HashMap<>();
+        rel.put("id", id);
+        rel.put("type", "hasComponent");
+        rel.put("dbId", dbId);
+        rel.put("stoichiometry", stoichiometry);
+        rel.put("order", order);
+        return rel;
+    }
+
+    private static List<Long> sorted(List<Long> ids) {
+        List<Long> ret = new ArrayList<>(ids);
+        Collections.sort(ret);
+        return ret;
+    }
+}